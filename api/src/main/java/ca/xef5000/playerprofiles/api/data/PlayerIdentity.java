@@ -2,7 +2,7 @@ package ca.xef5000.playerprofiles.api.data;
 
 public class PlayerIdentity {
     private final IdentityData originalIdentity;
-    private IdentityData appliedIdentity;
+    private volatile IdentityData appliedIdentity;
 
     public PlayerIdentity(IdentityData originalIdentity) {
         this.originalIdentity = originalIdentity;
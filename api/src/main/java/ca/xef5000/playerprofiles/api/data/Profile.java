@@ -5,6 +5,7 @@ import org.bukkit.plugin.Plugin;
 import java.sql.Timestamp;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public interface Profile {
     UUID getProfileId();
@@ -16,4 +17,41 @@ public interface Profile {
 
     void setCustomData(Plugin plugin, String key, Object data);
     <T> Optional<T> getCustomData(Plugin plugin, String key, Class<T> type);
+
+    /**
+     * Gets a typed custom data value.
+     * @param key The key.
+     * @return The value, or empty if it is not set or can't be decoded by the key's codec.
+     */
+    <T> Optional<T> get(ProfileDataKey<T> key);
+
+    /**
+     * Sets a typed custom data value.
+     * @param key The key.
+     * @param value The value, or null to remove it.
+     */
+    <T> void set(ProfileDataKey<T> key, T value);
+
+    /**
+     * Removes a custom data value.
+     * @param key The key.
+     */
+    void remove(ProfileDataKey<?> key);
+
+    int getInt(ProfileDataKey.IntKey key, int defaultValue);
+    void setInt(ProfileDataKey.IntKey key, int value);
+
+    long getLong(ProfileDataKey.LongKey key, long defaultValue);
+    void setLong(ProfileDataKey.LongKey key, long value);
+
+    double getDouble(ProfileDataKey.DoubleKey key, double defaultValue);
+    void setDouble(ProfileDataKey.DoubleKey key, double value);
+
+    /**
+     * Loads a plugin's custom data in the background. Custom data is read per plugin on first access,
+     * which blocks on the database; call this first to avoid that on the main thread.
+     * @param plugin The plugin whose data to load.
+     * @return A CompletableFuture that completes once the data is in memory.
+     */
+    CompletableFuture<Void> loadCustomData(Plugin plugin);
 }
@@ -0,0 +1,85 @@
+package ca.xef5000.playerprofiles.api.data;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.util.function.Function;
+
+/**
+ * Turns a custom data value into the text stored in the database, and back.
+ * The built-in codecs write plain JSON, so values saved through the untyped
+ * {@link Profile#setCustomData} API can be read with a typed key and the other way around.
+ * @param <T> The value type.
+ */
+public interface ProfileDataCodec<T> {
+
+    ProfileDataCodec<String> STRING = of(value -> new JsonPrimitive(value).toString(),
+            encoded -> JsonParser.parseString(encoded).getAsString());
+
+    ProfileDataCodec<Boolean> BOOLEAN = of(String::valueOf, Boolean::parseBoolean);
+
+    ProfileDataCodec<Integer> INT = of(String::valueOf, ProfileDataCodec::parseInt);
+
+    ProfileDataCodec<Long> LONG = of(String::valueOf, ProfileDataCodec::parseLong);
+
+    ProfileDataCodec<Double> DOUBLE = of(String::valueOf, Double::parseDouble);
+
+    /**
+     * Encodes a value for storage.
+     * @param value The value, never null.
+     * @return The encoded text.
+     */
+    String encode(T value);
+
+    /**
+     * Decodes a stored value.
+     * @param encoded The text written by {@link #encode(Object)}.
+     * @return The value.
+     * @throws RuntimeException if the text can't be decoded.
+     */
+    T decode(String encoded);
+
+    /**
+     * Creates a codec from two functions.
+     */
+    static <T> ProfileDataCodec<T> of(Function<T, String> encoder, Function<String, T> decoder) {
+        return new ProfileDataCodec<>() {
+            @Override
+            public String encode(T value) {
+                return encoder.apply(value);
+            }
+
+            @Override
+            public T decode(String encoded) {
+                return decoder.apply(encoded);
+            }
+        };
+    }
+
+    /**
+     * Creates a codec that stores values as JSON with Gson.
+     * @param type The value class.
+     */
+    static <T> ProfileDataCodec<T> json(Class<T> type) {
+        Gson gson = new Gson();
+        return of(gson::toJson, encoded -> gson.fromJson(encoded, type));
+    }
+
+    // Values written by the untyped API were decoded as doubles, so "5.0" has to read back as an int too
+    private static int parseInt(String encoded) {
+        try {
+            return Integer.parseInt(encoded);
+        } catch (NumberFormatException e) {
+            return (int) Double.parseDouble(encoded);
+        }
+    }
+
+    private static long parseLong(String encoded) {
+        try {
+            return Long.parseLong(encoded);
+        } catch (NumberFormatException e) {
+            return (long) Double.parseDouble(encoded);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package ca.xef5000.playerprofiles.api.data;
+
+import org.bukkit.plugin.Plugin;
+
+import java.util.Objects;
+
+/**
+ * A typed key for a profile's custom data, scoped to the plugin that owns it.
+ * Create keys once (for example as static fields) and reuse them:
+ * <pre>{@code
+ * ProfileDataKey<String> CLASS = ProfileDataKey.of(plugin, "class", ProfileDataCodec.STRING);
+ * ProfileDataKey.IntKey COINS = ProfileDataKey.ofInt(plugin, "coins");
+ * }</pre>
+ * The int, long and double keys have matching {@link Profile} accessors that don't box the value.
+ * @param <T> The value type.
+ */
+public class ProfileDataKey<T> {
+
+    private final String namespace;
+    private final String key;
+    private final ProfileDataCodec<T> codec;
+
+    protected ProfileDataKey(Plugin plugin, String key, ProfileDataCodec<T> codec) {
+        this.namespace = plugin.getName();
+        this.key = Objects.requireNonNull(key, "key");
+        this.codec = Objects.requireNonNull(codec, "codec");
+    }
+
+    /**
+     * Creates a key whose values are stored with the given codec.
+     * @param plugin The plugin owning the key.
+     * @param key The key name, unique within the plugin.
+     * @param codec The codec for the values.
+     */
+    public static <T> ProfileDataKey<T> of(Plugin plugin, String key, ProfileDataCodec<T> codec) {
+        return new ProfileDataKey<>(plugin, key, codec);
+    }
+
+    public static IntKey ofInt(Plugin plugin, String key) {
+        return new IntKey(plugin, key);
+    }
+
+    public static LongKey ofLong(Plugin plugin, String key) {
+        return new LongKey(plugin, key);
+    }
+
+    public static DoubleKey ofDouble(Plugin plugin, String key) {
+        return new DoubleKey(plugin, key);
+    }
+
+    /**
+     * @return The namespace the value is stored under, which is the owning plugin's name.
+     */
+    public String getNamespace() { return namespace; }
+
+    public String getKey() { return key; }
+
+    public ProfileDataCodec<T> getCodec() { return codec; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ProfileDataKey<?> other)) return false;
+        return namespace.equals(other.namespace) && key.equals(other.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(namespace, key);
+    }
+
+    @Override
+    public String toString() {
+        return namespace + ":" + key;
+    }
+
+    /**
+     * A key for int values. Use {@link Profile#getInt} and {@link Profile#setInt} to avoid boxing.
+     */
+    public static final class IntKey extends ProfileDataKey<Integer> {
+        private IntKey(Plugin plugin, String key) {
+            super(plugin, key, ProfileDataCodec.INT);
+        }
+    }
+
+    /**
+     * A key for long values. Use {@link Profile#getLong} and {@link Profile#setLong} to avoid boxing.
+     */
+    public static final class LongKey extends ProfileDataKey<Long> {
+        private LongKey(Plugin plugin, String key) {
+            super(plugin, key, ProfileDataCodec.LONG);
+        }
+    }
+
+    /**
+     * A key for double values. Use {@link Profile#getDouble} and {@link Profile#setDouble} to avoid boxing.
+     */
+    public static final class DoubleKey extends ProfileDataKey<Double> {
+        private DoubleKey(Plugin plugin, String key) {
+            super(plugin, key, ProfileDataCodec.DOUBLE);
+        }
+    }
+}
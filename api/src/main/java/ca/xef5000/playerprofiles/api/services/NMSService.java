@@ -47,4 +47,32 @@ public interface NMSService {
      */
     void relogPlayer(Player player);
 
+    /**
+     * Resends the player's own state (health, food, experience, abilities and inventory) to their client,
+     * without re-creating the entity. A cheaper alternative to {@link #relogPlayer(Player)} when the player
+     * stays in the same world.
+     * MUST be run on the main server thread.
+     * @param player The player to refresh.
+     */
+    void refreshClientState(Player player);
+
+    /**
+     * Captures the player's entity data (food, saturation, exhaustion, XP progress, fire, air,
+     * absorption, attributes, abilities, ...) as one compressed NBT snapshot.
+     * Position, identity, items, potion effects and game mode are left out, since profiles store those separately.
+     * MUST be run on the main server thread.
+     * @param player The player to capture.
+     * @return The compressed snapshot.
+     */
+    byte[] capturePlayerState(Player player);
+
+    /**
+     * Restores a snapshot taken with {@link #capturePlayerState(Player)} onto a player.
+     * The player keeps their position, identity and items. Items must be applied afterwards.
+     * MUST be run on the main server thread.
+     * @param player The player to restore onto.
+     * @param snapshot The compressed snapshot.
+     */
+    void restorePlayerState(Player player, byte[] snapshot);
+
 }
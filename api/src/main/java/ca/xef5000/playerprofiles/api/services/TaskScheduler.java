@@ -0,0 +1,58 @@
+package ca.xef5000.playerprofiles.api.services;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+/**
+ * Runs tasks on the thread that owns what they touch.
+ * On Paper everything but async work runs on the main thread. On Folia, player work runs on the player's
+ * entity scheduler, location work on the region that owns the location, and the rest on the global region.
+ * All delays and periods are in ticks.
+ */
+public interface TaskScheduler {
+
+    /**
+     * A scheduled task that can be cancelled.
+     */
+    interface Task {
+        void cancel();
+    }
+
+    /**
+     * @return Whether the server runs regions on separate threads (Folia).
+     */
+    boolean isRegionThreaded();
+
+    /**
+     * Runs a task on the thread that owns the player. On Folia, the task is dropped if the player leaves before it runs.
+     */
+    void runForPlayer(Player player, Runnable task);
+
+    void runForPlayerLater(Player player, Runnable task, long delayTicks);
+
+    /**
+     * Runs a task on the thread that owns the location.
+     */
+    void runAtLocation(Location location, Runnable task);
+
+    /**
+     * Runs a task that isn't tied to any player or location, such as work on server-wide state.
+     */
+    void runGlobal(Runnable task);
+
+    void runGlobalLater(Runnable task, long delayTicks);
+
+    Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks);
+
+    /**
+     * Runs a task off the server threads.
+     */
+    void runAsync(Runnable task);
+
+    Task runAsyncTimer(Runnable task, long delayTicks, long periodTicks);
+
+    /**
+     * Cancels every task this plugin has scheduled.
+     */
+    void cancelAll();
+}
@@ -0,0 +1,12 @@
+plugins {
+    id("java-library")
+}
+
+
+dependencies {
+    // The shared, version-agnostic NMS logic. It never touches NMS classes directly;
+    // each version module supplies those through its adapter.
+    implementation(project(":api"))
+
+    compileOnly("io.papermc.paper:paper-api:1.20.1-R0.1-SNAPSHOT")
+}
@@ -0,0 +1,636 @@
+package ca.xef5000.playerprofiles.nms.common;
+
+import ca.xef5000.playerprofiles.api.data.IdentityData;
+import ca.xef5000.playerprofiles.api.services.NMSService;
+import ca.xef5000.playerprofiles.api.services.TaskScheduler;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The identity-swap, cleanup and state snapshot logic shared by every supported server version.
+ * Each nms module extends this with a thin adapter that implements the handful of version-specific
+ * accessors below, so changes to the algorithm are made once and apply to all versions.
+ * @param <H> The server player handle (ServerPlayer).
+ * @param <G> The game profile (GameProfile).
+ * @param <P> The packet type (Packet).
+ */
+public abstract class AbstractNMSService<H, G, P> implements NMSService {
+
+    protected final Plugin plugin;
+    protected final TaskScheduler scheduler;
+
+    // Snapshot keys that belong to the entity's identity, position or the server itself, or that the profile
+    // already stores in its own columns (items, effects, game mode). Since 1.21.5 armor and offhand are saved
+    // under "equipment" rather than in "Inventory".
+    protected static final Set<String> SNAPSHOT_EXCLUDED_KEYS = Set.of(
+            "UUID", "Pos", "Motion", "Rotation", "Dimension", "WorldUUIDLeast", "WorldUUIDMost",
+            "Passengers", "RootVehicle", "SleepingX", "SleepingY", "SleepingZ", "ender_pearls",
+            "bukkit", "BukkitValues", "Paper", "Paper.Origin", "Paper.OriginWorld", "Paper.SpawnReason",
+            "Spigot.ticksLived", "Bukkit.updateLevel",
+            "Inventory", "equipment", "EnderItems", "ActiveEffects", "active_effects", "playerGameType", "previousPlayerGameType");
+
+    // Tab list changes waiting for the end of the tick, so switches in the same tick share one packet. Anything
+    // that spawns a switched player for viewers flushes them first, since clients drop the skin of a player
+    // entity whose UUID isn't on the tab list yet. Guarded by pendingInfoUpdates, since on Folia players switch
+    // on different threads.
+    private final Set<UUID> pendingInfoRemovals = new LinkedHashSet<>();
+    private final Set<H> pendingInfoUpdates = new LinkedHashSet<>();
+
+    protected AbstractNMSService(Plugin plugin, TaskScheduler scheduler) {
+        this.plugin = plugin;
+        this.scheduler = scheduler;
+    }
+
+    // --- Version-specific accessors, implemented by each adapter ---
+
+    protected abstract H getHandle(Player player);
+
+    protected abstract Player getBukkitPlayer(H handle);
+
+    protected abstract UUID getUUID(H handle);
+
+    /**
+     * Sets the entity UUID, keeping any cached forms of it in sync.
+     */
+    protected abstract void setUUID(H handle, UUID uuid);
+
+    protected abstract G getGameProfile(H handle);
+
+    protected abstract void setGameProfile(H handle, G profile);
+
+    /**
+     * @param skin The skin to put in the textures property, or null for none.
+     */
+    protected abstract G createGameProfile(UUID uuid, String name, IdentityData.SkinData skin);
+
+    protected abstract IdentityData toIdentity(G profile);
+
+    /**
+     * @return The PlayerList map of online players by UUID.
+     */
+    protected abstract Map<UUID, H> getPlayersByUUID(H handle);
+
+    /**
+     * @return The PlayerList map of online players by lower-case name.
+     */
+    protected abstract Map<String, H> getPlayersByName(H handle);
+
+    protected abstract P createInfoRemovePacket(List<UUID> uuids);
+
+    /**
+     * Creates one tab list entry packet that adds all the given players, with their game mode and listed state.
+     * @param includeDisplayName Whether to send the display names too.
+     */
+    protected abstract P createInfoUpdatePacket(Collection<H> handles, boolean includeDisplayName);
+
+    /**
+     * Wraps packets in a bundle, which the client applies together in a single frame.
+     */
+    protected abstract P createBundlePacket(List<P> packets);
+
+    protected abstract void sendPacket(H viewer, P packet);
+
+    /**
+     * @return The player's ServerLevel, or null if they are not in one.
+     */
+    protected abstract Object getLevel(H handle);
+
+    /**
+     * @return The NMS Entity class, used to find entity lookup methods by signature.
+     */
+    protected abstract Class<?> getEntityClass();
+
+    protected abstract void removeFromChunkTracking(H handle);
+
+    /**
+     * Re-creates the player entity through the server's own respawn logic, without it counting as a death.
+     */
+    protected abstract void respawn(H handle);
+
+    /**
+     * Makes the server send the player's health, food, experience, abilities and open inventory to their client again.
+     */
+    protected abstract void resendClientState(H handle);
+
+    /**
+     * Writes the player's entity data as uncompressed NBT, without the given keys.
+     */
+    protected abstract void writeState(H handle, DataOutputStream out, Set<String> excludedKeys) throws IOException;
+
+    /**
+     * Reads NBT written by {@link #writeState} and applies it, skipping the given keys.
+     */
+    protected abstract void readState(H handle, DataInputStream in, Set<String> excludedKeys) throws IOException;
+
+    /**
+     * The name to give the swapped-in game profile. Defaults to the player's current name.
+     */
+    protected String getGameProfileName(IdentityData identity, Player player) {
+        return player.getName();
+    }
+
+    // --- Shared logic ---
+
+    @Override
+    public void applyIdentity(Player player, IdentityData newIdentity) {
+        try {
+            H handle = getHandle(player);
+            UUID oldUUID = getUUID(handle);
+
+            // Create new GameProfile
+            IdentityData.SkinData skin = newIdentity.skin();
+            boolean signedSkin = skin != null && skin.value() != null && !skin.value().isEmpty()
+                    && skin.signature() != null && !skin.signature().isEmpty();
+            G newProfile = createGameProfile(newIdentity.uuid(), getGameProfileName(newIdentity, player), signedSkin ? skin : null);
+
+            plugin.getLogger().info("Changing UUID from " + oldUUID + " to " + newIdentity.uuid());
+
+            // Use the safer in-place update approach
+            updatePlayerUUIDInPlace(handle, oldUUID, newProfile, newIdentity.uuid());
+
+            plugin.getLogger().info("UUID change complete. New UUID: " + getUUID(handle));
+
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to apply identity for " + player.getName(), e);
+        }
+    }
+
+    @Override
+    public IdentityData getOriginalIdentity(Player player) {
+        try {
+            return toIdentity(getGameProfile(getHandle(player)));
+        } catch (Exception e) {
+            plugin.getLogger().severe("Failed to get original identity for " + player.getName() + ": " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void updatePlayerUUIDInPlace(H handle, UUID oldUUID, G newProfile, UUID newUUID) {
+        try {
+            // Step 1: Remove from PlayerList maps with old UUID
+            removeFromPlayerList(handle, oldUUID);
+
+            // Step 2: Update the GameProfile and the entity UUID
+            updateGameProfile(handle, newProfile, newUUID);
+
+            // Step 3: Re-add to PlayerList maps with new UUID
+            addToPlayerList(handle);
+
+            // Step 4: Update client-side representation
+            updateClientSidePlayer(handle, oldUUID);
+
+            // Step 5: Update any CraftBukkit references
+            updateCraftBukkitReferences(handle);
+
+        } catch (Exception e) {
+            plugin.getLogger().severe("Failed to update player UUID in place: " + e.getMessage());
+            e.printStackTrace();
+            throw new RuntimeException("UUID update failed", e);
+        }
+    }
+
+    private String getNameKey(H handle) {
+        return toIdentity(getGameProfile(handle)).name().toLowerCase(Locale.ROOT);
+    }
+
+    private void removeFromPlayerList(H handle, UUID oldUUID) {
+        try {
+            if (getPlayersByUUID(handle).remove(oldUUID) != null) {
+                plugin.getLogger().fine("Removed player from UUID map");
+            }
+            if (getPlayersByName(handle).remove(getNameKey(handle)) != null) {
+                plugin.getLogger().fine("Removed player from name map");
+            }
+        } catch (Exception e) {
+            plugin.getLogger().warning("Could not remove player from PlayerList maps: " + e.getMessage());
+        }
+    }
+
+    private void updateGameProfile(H handle, G newProfile, UUID newUUID) {
+        setGameProfile(handle, newProfile);
+        setUUID(handle, newUUID);
+
+        // Verify the change took effect
+        UUID currentUUID = getUUID(handle);
+        plugin.getLogger().info("After update - player.getUUID() returns: " + currentUUID);
+        plugin.getLogger().info("Expected UUID: " + newUUID);
+        plugin.getLogger().info("GameProfile.getId() returns: " + toIdentity(getGameProfile(handle)).uuid());
+
+        if (!currentUUID.equals(newUUID)) {
+            plugin.getLogger().warning("UUID update failed! getUUID() still returns old value.");
+            // Try to find where getUUID() is getting its value from
+            debugUUIDSources(handle);
+        }
+    }
+
+    private void debugUUIDSources(H handle) {
+        plugin.getLogger().info("=== UUID DEBUG INFO ===");
+
+        Class<?> profileClass = getGameProfile(handle).getClass();
+        Class<?> currentClass = handle.getClass();
+        while (currentClass != null) {
+            Field[] fields = currentClass.getDeclaredFields();
+
+            for (Field field : fields) {
+                try {
+                    field.setAccessible(true);
+                    Object value = field.get(handle);
+
+                    if (value instanceof UUID) {
+                        plugin.getLogger().info("UUID field '" + field.getName() + "' in " + currentClass.getSimpleName() + ": " + value);
+                    } else if (profileClass.isInstance(value)) {
+                        @SuppressWarnings("unchecked")
+                        G profile = (G) value;
+                        plugin.getLogger().info("GameProfile field '" + field.getName() + "' in " + currentClass.getSimpleName() + " has UUID: " + toIdentity(profile).uuid());
+                    }
+                } catch (Exception e) {
+                    // Skip inaccessible fields
+                }
+            }
+
+            currentClass = currentClass.getSuperclass();
+        }
+
+        plugin.getLogger().info("=== END UUID DEBUG ===");
+    }
+
+    private void addToPlayerList(H handle) {
+        try {
+            getPlayersByUUID(handle).put(getUUID(handle), handle);
+            getPlayersByName(handle).put(getNameKey(handle), handle);
+            plugin.getLogger().fine("Added player to PlayerList maps");
+        } catch (Exception e) {
+            plugin.getLogger().warning("Could not add player to PlayerList maps: " + e.getMessage());
+        }
+    }
+
+    private void updateClientSidePlayer(H handle, UUID oldUUID) {
+        try {
+            // The tab list change is sent at the end of the tick, together with any other switch in the same tick
+            synchronized (pendingInfoUpdates) {
+                if (pendingInfoRemovals.isEmpty() && pendingInfoUpdates.isEmpty()) {
+                    scheduler.runGlobal(this::flushInfoUpdates);
+                }
+                pendingInfoRemovals.add(oldUUID);
+                pendingInfoUpdates.add(handle);
+            }
+
+            // Force client to refresh player visuals
+            Player bukkitPlayer = getBukkitPlayer(handle);
+            scheduler.runForPlayerLater(bukkitPlayer, () -> {
+                try {
+                    // The retrack below spawns the player again for their viewers
+                    flushInfoUpdates();
+
+                    // Create a fresh packet specifically for the player's own tab list entry
+                    sendPacket(handle, createInfoUpdatePacket(Collections.singletonList(handle), false));
+
+                    // Also refresh visual representation, for the players that can actually see this one
+                    for (Player viewer : bukkitPlayer.getTrackedPlayers()) {
+                        Runnable retrack = () -> {
+                            viewer.hidePlayer(plugin, bukkitPlayer);
+                            viewer.showPlayer(plugin, bukkitPlayer);
+                        };
+                        // On Folia the viewer may be ticked by another region
+                        if (scheduler.isRegionThreaded()) {
+                            scheduler.runForPlayer(viewer, retrack);
+                        } else {
+                            retrack.run();
+                        }
+                    }
+
+                    plugin.getLogger().info("Sent additional tab list update to " + bukkitPlayer.getName());
+                } catch (Exception e) {
+                    plugin.getLogger().warning("Failed to send additional tab list update: " + e.getMessage());
+                }
+            }, 3L);
+        } catch (Exception e) {
+            plugin.getLogger().warning("Error updating client-side player: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sends the pending tab list changes as one bundle per online player: a single removal of all the old
+     * UUIDs followed by a single entry update for all the switched players. Does nothing if none are pending.
+     */
+    private void flushInfoUpdates() {
+        List<UUID> removals;
+        List<H> pending;
+        synchronized (pendingInfoUpdates) {
+            if (pendingInfoRemovals.isEmpty() && pendingInfoUpdates.isEmpty()) {
+                return;
+            }
+            removals = new ArrayList<>(pendingInfoRemovals);
+            pending = new ArrayList<>(pendingInfoUpdates);
+            pendingInfoRemovals.clear();
+            pendingInfoUpdates.clear();
+        }
+
+        try {
+            List<H> handles = new ArrayList<>(pending.size());
+            for (H handle : pending) {
+                // Skip anyone who quit before the end of the tick
+                if (getBukkitPlayer(handle).isOnline()) {
+                    handles.add(handle);
+                }
+            }
+
+            List<P> packets = new ArrayList<>(2);
+            packets.add(createInfoRemovePacket(removals));
+            if (!handles.isEmpty()) {
+                packets.add(createInfoUpdatePacket(handles, true));
+            }
+            P bundle = createBundlePacket(packets);
+
+            // Built once and sent to everyone, since the tab list shows every online player
+            for (Player onlinePlayer : Bukkit.getOnlinePlayers()) {
+                sendPacket(getHandle(onlinePlayer), bundle);
+            }
+        } catch (Exception e) {
+            plugin.getLogger().warning("Error sending tab list updates: " + e.getMessage());
+        }
+    }
+
+    private void updateCraftBukkitReferences(H handle) {
+        try {
+            Player bukkitPlayer = getBukkitPlayer(handle);
+
+            // Try to update the entity reference in CraftPlayer
+            Field[] fields = bukkitPlayer.getClass().getDeclaredFields();
+            for (Field field : fields) {
+                if (field.getType().isInstance(handle)) {
+                    field.setAccessible(true);
+                    field.set(bukkitPlayer, handle);
+                    plugin.getLogger().info("Updated CraftPlayer entity reference (field: " + field.getName() + ")");
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            plugin.getLogger().warning("Could not update CraftBukkit references: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void cleanupPlayerOnLogout(Player player) {
+        try {
+            H handle = getHandle(player);
+            UUID currentUUID = getUUID(handle);
+
+            plugin.getLogger().info("Cleaning up player " + player.getName() + " with UUID: " + currentUUID);
+
+            // Remove from all entity tracking systems (with better error handling)
+            cleanupEntityFromWorld(handle);
+
+            // Remove from PlayerList maps
+            removeFromPlayerList(handle, currentUUID);
+
+            plugin.getLogger().info("Player cleanup complete for " + player.getName());
+
+        } catch (Exception e) {
+            plugin.getLogger().severe("Failed to cleanup player on logout: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void cleanupEntityFromWorld(H handle) {
+        try {
+            Object level = getLevel(handle);
+            if (level == null) {
+                plugin.getLogger().warning("Player level is null during cleanup");
+                return;
+            }
+
+            // Remove from chunk tracking
+            try {
+                removeFromChunkTracking(handle);
+                plugin.getLogger().fine("Removed player from chunk tracking");
+            } catch (Exception e) {
+                plugin.getLogger().warning("Could not remove from chunk tracking: " + e.getMessage());
+            }
+
+            // Remove from entity lookup systems (with null checks)
+            removeFromEntityLookup(level, handle);
+
+            // Remove from level's entity tracking
+            removeFromLevelTracking(level, handle);
+
+        } catch (Exception e) {
+            plugin.getLogger().warning("Could not cleanup entity from world: " + e.getMessage());
+        }
+    }
+
+    private void removeFromEntityLookup(Object level, H handle) {
+        try {
+            // Find the entity lookup/registry and remove the player
+            Field[] fields = level.getClass().getDeclaredFields();
+
+            for (Field field : fields) {
+                try {
+                    field.setAccessible(true);
+                    Object value = field.get(level);
+
+                    // Add null check here to prevent the null pointer error
+                    if (value == null) {
+                        continue; // Skip null fields
+                    }
+
+                    // Look for entity tracking fields
+                    String className = value.getClass().getName();
+                    if (className.contains("EntityLookup") || className.contains("EntityManager") ||
+                            className.contains("EntitySectionStorage") || className.contains("EntityTickList")) {
+
+                        // Try to find and call remove methods
+                        removeEntityFromLookup(value, handle);
+                    }
+                } catch (Exception e) {
+                    // Continue with other fields if one fails
+                    plugin.getLogger().fine("Could not access field " + field.getName() + ": " + e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            plugin.getLogger().warning("Could not access entity lookup: " + e.getMessage());
+        }
+    }
+
+    private void removeEntityFromLookup(Object entityLookup, H handle) {
+        if (entityLookup == null) {
+            return; // Safety check
+        }
+
+        try {
+            // Try common remove method names
+            String[] removeMethodNames = {"remove", "removeEntity", "untrack", "unregister", "removeImmediately"};
+
+            for (String methodName : removeMethodNames) {
+                try {
+                    Method removeMethod = entityLookup.getClass().getDeclaredMethod(methodName, getEntityClass());
+                    removeMethod.setAccessible(true);
+                    removeMethod.invoke(entityLookup, handle);
+                    plugin.getLogger().info("Removed entity using method: " + methodName);
+                    return;
+                } catch (NoSuchMethodException e) {
+                    // Try next method
+                } catch (Exception e) {
+                    plugin.getLogger().fine("Method " + methodName + " failed: " + e.getMessage());
+                }
+            }
+
+            // Try with UUID parameter
+            for (String methodName : removeMethodNames) {
+                try {
+                    Method removeMethod = entityLookup.getClass().getDeclaredMethod(methodName, UUID.class);
+                    removeMethod.setAccessible(true);
+                    removeMethod.invoke(entityLookup, getUUID(handle));
+                    plugin.getLogger().info("Removed entity by UUID using method: " + methodName);
+                    return;
+                } catch (NoSuchMethodException e) {
+                    // Try next method
+                } catch (Exception e) {
+                    plugin.getLogger().fine("UUID method " + methodName + " failed: " + e.getMessage());
+                }
+            }
+
+        } catch (Exception e) {
+            plugin.getLogger().warning("Could not remove entity from lookup: " + e.getMessage());
+        }
+    }
+
+    private void removeFromLevelTracking(Object level, H handle) {
+        try {
+            // Remove from the level's entity collections
+            Field[] fields = level.getClass().getDeclaredFields();
+
+            for (Field field : fields) {
+                try {
+                    field.setAccessible(true);
+                    Object value = field.get(level);
+
+                    // Add null check
+                    if (value == null) {
+                        continue;
+                    }
+
+                    if (value instanceof Map) {
+                        Map<?, ?> map = (Map<?, ?>) value;
+
+                        // Remove from any maps that might contain this entity
+                        if (!map.isEmpty()) {
+                            Object firstKey = map.keySet().iterator().next();
+                            if (firstKey instanceof UUID) {
+                                Object removed = map.remove(getUUID(handle));
+                                if (removed != null) {
+                                    plugin.getLogger().info("Removed from level UUID map: " + field.getName());
+                                }
+                            }
+                        }
+                    } else if (value instanceof Collection) {
+                        Collection<?> collection = (Collection<?>) value;
+                        boolean removed = collection.remove(handle);
+                        if (removed) {
+                            plugin.getLogger().info("Removed from level collection: " + field.getName());
+                        }
+                    }
+                } catch (Exception e) {
+                    // Continue with other fields if one fails
+                    plugin.getLogger().fine("Could not access field " + field.getName() + ": " + e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            plugin.getLogger().warning("Could not remove from level tracking: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void setPlayerInfoTemporarily(Player player, IdentityData tempIdentity, Runnable callback) {
+        try {
+            H handle = getHandle(player);
+
+            // Store current values
+            G currentProfile = getGameProfile(handle);
+
+            // Create temporary profile
+            IdentityData.SkinData skin = tempIdentity.skin() != null && tempIdentity.skin().value() != null ? tempIdentity.skin() : null;
+            G tempProfile = createGameProfile(tempIdentity.uuid(), tempIdentity.name(), skin);
+
+            // Temporarily update
+            updateGameProfileSilent(handle, tempProfile);
+
+            try {
+                callback.run();
+            } finally {
+                // Restore original profile
+                updateGameProfileSilent(handle, currentProfile);
+            }
+
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to temporarily set player info: " + e.getMessage());
+            callback.run(); // Execute anyway
+        }
+    }
+
+    /**
+     * Silently updates GameProfile without logging.
+     */
+    private void updateGameProfileSilent(H handle, G newProfile) {
+        try {
+            setGameProfile(handle, newProfile);
+        } catch (Exception e) {
+            // Ignore errors in silent update
+        }
+    }
+
+    @Override
+    public void relogPlayer(Player player) {
+        try {
+            // The respawn spawns the player again for their viewers, so the new tab list entry must be there first
+            flushInfoUpdates();
+            respawn(getHandle(player));
+
+            plugin.getLogger().info("Successfully performed a server-side respawn for " + player.getName());
+
+        } catch (Exception e) {
+            plugin.getLogger().severe("CRITICAL FAILURE during player respawn!");
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void refreshClientState(Player player) {
+        resendClientState(getHandle(player));
+    }
+
+    @Override
+    public byte[] capturePlayerState(Player player) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+                writeState(getHandle(player), out, SNAPSHOT_EXCLUDED_KEYS);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to capture player state for " + player.getName(), e);
+        }
+    }
+
+    @Override
+    public void restorePlayerState(Player player, byte[] snapshot) {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(snapshot)))) {
+            readState(getHandle(player), in, SNAPSHOT_EXCLUDED_KEYS);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read player state snapshot for " + player.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ca.xef5000.playerprofiles.nms.common;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Helpers for resolving NMS fields into handles once, when an adapter class loads.
+ * Adapters keep the results in static final fields, so every later access is direct and inlinable.
+ * Both methods return null instead of throwing, so an adapter's self-test can report what's missing.
+ */
+public final class NMSAccessors {
+
+    private NMSAccessors() {}
+
+    /**
+     * Finds a map field by its generic type, since field names differ between mappings.
+     * @param owner The class declaring the field.
+     * @param keyType The map's key type.
+     * @param valueType The map's value type.
+     * @return A handle for the field, or null if there is no such field.
+     */
+    public static VarHandle findMap(Class<?> owner, Class<?> keyType, Class<?> valueType) {
+        for (Field field : owner.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || !Map.class.isAssignableFrom(field.getType())) {
+                continue;
+            }
+            if (field.getGenericType() instanceof ParameterizedType type
+                    && type.getActualTypeArguments()[0] == keyType
+                    && type.getActualTypeArguments()[1] == valueType) {
+                try {
+                    return MethodHandles.privateLookupIn(owner, MethodHandles.lookup()).unreflectVarHandle(field);
+                } catch (IllegalAccessException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds an instance field declared in the owner class and returns a setter for it, adapted to the given type.
+     * Works for final fields too, which a VarHandle can't write.
+     * @param owner The class declaring the field.
+     * @param match Picks the field.
+     * @param type The type to adapt the setter to, so callers can use invokeExact.
+     * @return The setter, or null if there is no such field.
+     */
+    public static MethodHandle findSetter(Class<?> owner, Predicate<Field> match, MethodType type) {
+        for (Field field : owner.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) && match.test(field)) {
+                try {
+                    field.setAccessible(true);
+                    return MethodHandles.privateLookupIn(owner, MethodHandles.lookup()).unreflectSetter(field).asType(type);
+                } catch (IllegalAccessException | RuntimeException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -8,6 +8,8 @@ plugins {
 dependencies {
     // This module must implement the interface from your API module.
     implementation(project(":api"))
+    // The shared identity-swap logic; this module only adapts it to its NMS version.
+    implementation(project(":nms:common"))
 
     paperweight.paperDevBundle("1.20.6-R0.1-SNAPSHOT")
     compileOnly("io.papermc.paper:paper-api:1.20.6-R0.1-SNAPSHOT")
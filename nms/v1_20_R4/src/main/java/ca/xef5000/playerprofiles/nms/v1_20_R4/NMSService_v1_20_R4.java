@@ -1,641 +1,267 @@
 package ca.xef5000.playerprofiles.nms.v1_20_R4;
 
 import ca.xef5000.playerprofiles.api.data.IdentityData;
-import ca.xef5000.playerprofiles.api.services.NMSService;
+import ca.xef5000.playerprofiles.api.services.TaskScheduler;
+import ca.xef5000.playerprofiles.nms.common.AbstractNMSService;
+import ca.xef5000.playerprofiles.nms.common.NMSAccessors;
 import com.mojang.authlib.GameProfile;
 import com.mojang.authlib.properties.Property;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.game.ClientboundBundlePacket;
 import net.minecraft.network.protocol.game.ClientboundPlayerInfoRemovePacket;
 import net.minecraft.network.protocol.game.ClientboundPlayerInfoUpdatePacket;
-import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
-import net.minecraft.server.network.CommonListenerCookie;
-import net.minecraft.server.network.ServerGamePacketListenerImpl;
 import net.minecraft.server.players.PlayerList;
+import net.minecraft.world.Container;
 import net.minecraft.world.entity.Entity;
-import net.minecraft.world.level.GameType;
-import org.bukkit.Bukkit;
+import net.minecraft.world.item.ItemStack;
 import org.bukkit.craftbukkit.entity.CraftHumanEntity;
 import org.bukkit.craftbukkit.entity.CraftPlayer;
 import org.bukkit.entity.Player;
 import org.bukkit.event.player.PlayerRespawnEvent;
 import org.bukkit.plugin.Plugin;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
 import java.util.*;
 
-public class NMSService_v1_20_R4 implements NMSService {
+/**
+ * The v1.20.R4 adapter for the shared identity logic in {@link AbstractNMSService}.
+ */
+public class NMSService_v1_20_R4 extends AbstractNMSService<ServerPlayer, GameProfile, Packet<?>> {
+
+    // NMS accessors, resolved once instead of scanning the class hierarchy on every switch.
+    // Null if resolution failed, in which case the constructor's self-test refuses to create the handler.
+    private static final VarHandle PLAYERS_BY_UUID = NMSAccessors.findMap(PlayerList.class, UUID.class, ServerPlayer.class);
+    // Paper adds this one, keyed by lower-case name
+    private static final VarHandle PLAYERS_BY_NAME = NMSAccessors.findMap(PlayerList.class, String.class, ServerPlayer.class);
+    private static final MethodHandle GAME_PROFILE_SETTER = NMSAccessors.findSetter(net.minecraft.world.entity.player.Player.class,
+            field -> field.getType() == GameProfile.class, MethodType.methodType(void.class, ServerPlayer.class, GameProfile.class));
+    private static final MethodHandle PERM_SETTER = NMSAccessors.findSetter(CraftHumanEntity.class,
+            field -> field.getName().equals("perm"), MethodType.methodType(void.class, Player.class, Object.class));
 
-    private final Plugin plugin;
     /**
-     * Constructor for the v1.20.R1 Identity Service implementation.
+     * Constructor for the v1.20.R4 Identity Service implementation.
      * @param plugin The main plugin instance, required for Bukkit API calls like hide/show player.
+     * @param scheduler Runs the delayed client refreshes on the right thread.
      */
-    public NMSService_v1_20_R4(Plugin plugin) {
-        this.plugin = plugin;
+    public NMSService_v1_20_R4(Plugin plugin, TaskScheduler scheduler) {
+        super(plugin, scheduler);
+        selfTest();
     }
 
-    @Override
-    public void applyIdentity(Player player, IdentityData newIdentity) {
-        try {
-            ServerPlayer serverPlayer = ((CraftPlayer) player).getHandle();
-            UUID oldUUID = serverPlayer.getUUID();
-
-            // Create new GameProfile
-            GameProfile newProfile = createGameProfileFromData(newIdentity, player);
-
-            plugin.getLogger().info("Changing UUID from " + oldUUID + " to " + newProfile.getId());
-
-            // Use the safer in-place update approach
-            updatePlayerUUIDInPlace(serverPlayer, oldUUID, newProfile);
-
-            plugin.getLogger().info("UUID change complete. New UUID: " + serverPlayer.getUUID());
-
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to apply identity for " + player.getName(), e);
+    /**
+     * Fails fast if any accessor could not be resolved against this server build, so a broken handler
+     * is rejected at startup instead of corrupting a player in the middle of a switch.
+     */
+    private static void selfTest() {
+        if (PLAYERS_BY_UUID == null) {
+            throw new IllegalStateException("Could not resolve the PlayerList UUID map");
+        }
+        if (PLAYERS_BY_NAME == null) {
+            throw new IllegalStateException("Could not resolve the PlayerList name map");
+        }
+        if (GAME_PROFILE_SETTER == null) {
+            throw new IllegalStateException("Could not resolve the player GameProfile field");
+        }
+        if (PERM_SETTER == null) {
+            throw new IllegalStateException("Could not resolve the CraftHumanEntity permissible field");
         }
     }
 
     @Override
-    public IdentityData getOriginalIdentity(Player player) {
-        try {
-            GameProfile profile = ((CraftPlayer) player).getHandle().getGameProfile();
-
-            Property skinProperty = profile.getProperties().get("textures").stream().findFirst().orElse(null);
-            IdentityData.SkinData skinData = IdentityData.SkinData.EMPTY;
-            if (skinProperty != null) {
-                skinData = new IdentityData.SkinData(skinProperty.value(), skinProperty.signature());
-            }
-
-            return new IdentityData(profile.getId(), profile.getName(), skinData);
-        } catch (Exception e) {
-            plugin.getLogger().severe("Failed to get original identity for " + player.getName() + ": " + e.getMessage());
-            e.printStackTrace();
-            return null;
-        }
+    protected ServerPlayer getHandle(Player player) {
+        return ((CraftPlayer) player).getHandle();
     }
 
-    private void updatePlayerUUIDInPlace(ServerPlayer serverPlayer, UUID oldUUID, GameProfile newProfile) {
-        try {
-            // Step 1: Remove from PlayerList maps with old UUID
-            removeFromPlayerList(serverPlayer, oldUUID);
-
-            // Step 2: Update the GameProfile using multiple approaches
-            updateGameProfile(serverPlayer, newProfile);
-
-            // Step 3: Re-add to PlayerList maps with new UUID
-            addToPlayerList(serverPlayer);
+    @Override
+    protected Player getBukkitPlayer(ServerPlayer handle) {
+        return handle.getBukkitEntity();
+    }
 
-            // Step 4: Update client-side representation
-            updateClientSidePlayer(serverPlayer, oldUUID);
+    @Override
+    protected UUID getUUID(ServerPlayer handle) {
+        return handle.getUUID();
+    }
 
-            // Step 5: Update any CraftBukkit references
-            updateCraftBukkitReferences(serverPlayer);
+    @Override
+    protected void setUUID(ServerPlayer handle, UUID uuid) {
+        // Also updates the cached string form of the UUID
+        handle.setUUID(uuid);
+    }
 
-        } catch (Exception e) {
-            plugin.getLogger().severe("Failed to update player UUID in place: " + e.getMessage());
-            e.printStackTrace();
-            throw new RuntimeException("UUID update failed", e);
-        }
+    @Override
+    protected GameProfile getGameProfile(ServerPlayer handle) {
+        return handle.getGameProfile();
     }
 
-    private void removeFromPlayerList(ServerPlayer player, UUID oldUUID) {
+    @Override
+    protected void setGameProfile(ServerPlayer handle, GameProfile profile) {
         try {
-            PlayerList playerList = player.getServer().getPlayerList();
-
-            // Remove from PlayerList maps
-            Field[] fields = PlayerList.class.getDeclaredFields();
-            for (Field field : fields) {
-                try {
-                    field.setAccessible(true);
-                    Object value = field.get(playerList);
-
-                    if (value instanceof Map) {
-                        Map<?, ?> map = (Map<?, ?>) value;
-                        if (!map.isEmpty()) {
-                            Object firstKey = map.keySet().iterator().next();
-
-                            // Check if this is the UUID map
-                            if (firstKey instanceof UUID) {
-                                @SuppressWarnings("unchecked")
-                                Map<UUID, ServerPlayer> uuidMap = (Map<UUID, ServerPlayer>) map;
-                                ServerPlayer removed = uuidMap.remove(oldUUID);
-                                if (removed != null) {
-                                    plugin.getLogger().info("Removed player from UUID map (field: " + field.getName() + ")");
-                                }
-                            }
-                            // Check if this is the name map
-                            else if (firstKey instanceof String) {
-                                @SuppressWarnings("unchecked")
-                                Map<String, ServerPlayer> nameMap = (Map<String, ServerPlayer>) map;
-                                ServerPlayer removed = nameMap.remove(player.getGameProfile().getName());
-                                if (removed != null) {
-                                    plugin.getLogger().info("Removed player from name map (field: " + field.getName() + ")");
-                                }
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    // Continue with other fields if one fails
-                    plugin.getLogger().fine("Could not access field " + field.getName() + ": " + e.getMessage());
-                }
-            }
-        } catch (Exception e) {
-            plugin.getLogger().warning("Could not remove player from PlayerList maps: " + e.getMessage());
+            GAME_PROFILE_SETTER.invokeExact(handle, profile);
+        } catch (Throwable e) {
+            throw new RuntimeException("Could not update GameProfile", e);
         }
     }
 
-    private void updateGameProfile(ServerPlayer player, GameProfile newProfile) throws Exception {
-        boolean gameProfileUpdated = false;
-
-        // Try updating GameProfile in Entity class (parent of ServerPlayer)
-        Class<?> currentClass = player.getClass();
-        while (currentClass != null) {
-            Field[] fields = currentClass.getDeclaredFields();
-
-            for (Field field : fields) {
-                try {
-                    field.setAccessible(true);
-
-                    // Update GameProfile field
-                    if (field.getType().equals(GameProfile.class)) {
-                        field.set(player, newProfile);
-                        plugin.getLogger().info("Updated GameProfile in field: " + field.getName() + " (class: " + currentClass.getSimpleName() + ")");
-                        gameProfileUpdated = true;
-                    }
-
-                    // Also look for UUID fields and update them
-                    if (field.getType().equals(UUID.class)) {
-                        UUID currentValue = (UUID) field.get(player);
-                        if (currentValue != null && !currentValue.equals(newProfile.getId())) {
-                            field.set(player, newProfile.getId());
-                            plugin.getLogger().info("Updated UUID in field: " + field.getName() + " (class: " + currentClass.getSimpleName() + ")");
-                            plugin.getLogger().info("Changed from: " + currentValue + " to: " + newProfile.getId());
-                        }
-                    }
-                } catch (Exception e) {
-                    // Continue with other fields if one fails
-                    plugin.getLogger().fine("Could not update field " + field.getName() + ": " + e.getMessage());
-                }
-            }
-
-            currentClass = currentClass.getSuperclass();
-        }
-
-        if (!gameProfileUpdated) {
-            throw new RuntimeException("Could not find GameProfile field to update");
-        }
-
-        // Verify the change took effect
-        UUID currentUUID = player.getUUID();
-        plugin.getLogger().info("After update - player.getUUID() returns: " + currentUUID);
-        plugin.getLogger().info("Expected UUID: " + newProfile.getId());
-        plugin.getLogger().info("GameProfile.getId() returns: " + player.getGameProfile().getId());
-
-        if (!currentUUID.equals(newProfile.getId())) {
-            plugin.getLogger().warning("UUID update failed! getUUID() still returns old value.");
-            // Try to find where getUUID() is getting its value from
-            debugUUIDSources(player, newProfile.getId());
+    @Override
+    protected GameProfile createGameProfile(UUID uuid, String name, IdentityData.SkinData skin) {
+        GameProfile profile = new GameProfile(uuid, name);
+        if (skin != null) {
+            profile.getProperties().put("textures", new Property("textures", skin.value(), skin.signature()));
         }
+        return profile;
     }
 
-    private void debugUUIDSources(ServerPlayer player, UUID expectedUUID) {
-        plugin.getLogger().info("=== UUID DEBUG INFO ===");
-
-        Class<?> currentClass = player.getClass();
-        while (currentClass != null) {
-            Field[] fields = currentClass.getDeclaredFields();
-
-            for (Field field : fields) {
-                try {
-                    field.setAccessible(true);
-                    Object value = field.get(player);
-
-                    if (value instanceof UUID) {
-                        plugin.getLogger().info("UUID field '" + field.getName() + "' in " + currentClass.getSimpleName() + ": " + value);
-                    } else if (value instanceof GameProfile) {
-                        GameProfile profile = (GameProfile) value;
-                        plugin.getLogger().info("GameProfile field '" + field.getName() + "' in " + currentClass.getSimpleName() + " has UUID: " + profile.getId());
-                    }
-                } catch (Exception e) {
-                    // Skip inaccessible fields
-                }
-            }
-
-            currentClass = currentClass.getSuperclass();
+    @Override
+    protected IdentityData toIdentity(GameProfile profile) {
+        Property skinProperty = profile.getProperties().get("textures").stream().findFirst().orElse(null);
+        IdentityData.SkinData skinData = IdentityData.SkinData.EMPTY;
+        if (skinProperty != null) {
+            skinData = new IdentityData.SkinData(skinProperty.value(), skinProperty.signature());
         }
+        return new IdentityData(profile.getId(), profile.getName(), skinData);
+    }
 
-        plugin.getLogger().info("=== END UUID DEBUG ===");
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Map<UUID, ServerPlayer> getPlayersByUUID(ServerPlayer handle) {
+        return (Map<UUID, ServerPlayer>) PLAYERS_BY_UUID.get(handle.getServer().getPlayerList());
     }
 
-    private void addToPlayerList(ServerPlayer player) {
-        try {
-            PlayerList playerList = player.getServer().getPlayerList();
-            UUID newUUID = player.getUUID();
-            String playerName = player.getGameProfile().getName();
-
-            // Find and update the maps
-            Field[] fields = PlayerList.class.getDeclaredFields();
-            for (Field field : fields) {
-                try {
-                    field.setAccessible(true);
-                    Object value = field.get(playerList);
-
-                    if (value instanceof Map) {
-                        Map<?, ?> map = (Map<?, ?>) value;
-                        if (!map.isEmpty()) {
-                            Object firstKey = map.keySet().iterator().next();
-
-                            // Add to UUID map
-                            if (firstKey instanceof UUID) {
-                                @SuppressWarnings("unchecked")
-                                Map<UUID, ServerPlayer> uuidMap = (Map<UUID, ServerPlayer>) map;
-                                uuidMap.put(newUUID, player);
-                                plugin.getLogger().info("Added player to UUID map (field: " + field.getName() + ")");
-                            }
-                            // Add to name map
-                            else if (firstKey instanceof String) {
-                                @SuppressWarnings("unchecked")
-                                Map<String, ServerPlayer> nameMap = (Map<String, ServerPlayer>) map;
-                                nameMap.put(playerName, player);
-                                plugin.getLogger().info("Added player to name map (field: " + field.getName() + ")");
-                            }
-                        } else {
-                            // Empty map - try to determine type by field name or type parameters
-                            if (field.getName().toLowerCase().contains("uuid") ||
-                                    field.getGenericType().toString().contains("UUID")) {
-                                @SuppressWarnings("unchecked")
-                                Map<UUID, ServerPlayer> uuidMap = (Map<UUID, ServerPlayer>) map;
-                                uuidMap.put(newUUID, player);
-                                plugin.getLogger().info("Added player to empty UUID map (field: " + field.getName() + ")");
-                            } else if (field.getName().toLowerCase().contains("name") ||
-                                    field.getGenericType().toString().contains("String")) {
-                                @SuppressWarnings("unchecked")
-                                Map<String, ServerPlayer> nameMap = (Map<String, ServerPlayer>) map;
-                                nameMap.put(playerName, player);
-                                plugin.getLogger().info("Added player to empty name map (field: " + field.getName() + ")");
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    // Continue with other fields if one fails
-                    plugin.getLogger().fine("Could not access field " + field.getName() + ": " + e.getMessage());
-                }
-            }
-        } catch (Exception e) {
-            plugin.getLogger().warning("Could not add player to PlayerList maps: " + e.getMessage());
-        }
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Map<String, ServerPlayer> getPlayersByName(ServerPlayer handle) {
+        return (Map<String, ServerPlayer>) PLAYERS_BY_NAME.get(handle.getServer().getPlayerList());
     }
 
-    private void updateClientSidePlayer(ServerPlayer player, UUID oldUUID) {
-        try {
-            // Send remove packet for old UUID
-            ClientboundPlayerInfoRemovePacket removePacket = new ClientboundPlayerInfoRemovePacket(
-                    Collections.singletonList(oldUUID)
-            );
-
-            // Send add packet for new player
-            ClientboundPlayerInfoUpdatePacket addPacket = new ClientboundPlayerInfoUpdatePacket(
-                    EnumSet.of(
-                            ClientboundPlayerInfoUpdatePacket.Action.ADD_PLAYER,
-                            ClientboundPlayerInfoUpdatePacket.Action.UPDATE_GAME_MODE,
-                            ClientboundPlayerInfoUpdatePacket.Action.UPDATE_LISTED,
-                            ClientboundPlayerInfoUpdatePacket.Action.UPDATE_DISPLAY_NAME
-                    ),
-                    Collections.singletonList(player)
-            );
-
-            // Send to all players
-            for (Player onlinePlayer : Bukkit.getOnlinePlayers()) {
-                ServerPlayer serverOnlinePlayer = ((CraftPlayer) onlinePlayer).getHandle();
-                serverOnlinePlayer.connection.send(removePacket);
-                serverOnlinePlayer.connection.send(addPacket);
-            }
-
-            // Force client to refresh player visuals
-            Player bukkitPlayer = player.getBukkitEntity();
-            Bukkit.getScheduler().runTaskLater(plugin, () -> {
-                try {
-                    // Create a fresh packet specifically for the player's own tab list entry
-                    ClientboundPlayerInfoUpdatePacket selfUpdatePacket = new ClientboundPlayerInfoUpdatePacket(
-                            EnumSet.of(
-                                    ClientboundPlayerInfoUpdatePacket.Action.ADD_PLAYER,
-                                    ClientboundPlayerInfoUpdatePacket.Action.UPDATE_GAME_MODE,
-                                    ClientboundPlayerInfoUpdatePacket.Action.UPDATE_LISTED
-                            ),
-                            Collections.singletonList(player)
-                    );
-
-                    player.connection.send(selfUpdatePacket);
-
-                    // Also refresh visual representation
-                    for (Player onlinePlayer : Bukkit.getOnlinePlayers()) {
-                        if (!onlinePlayer.equals(bukkitPlayer)) {
-                            onlinePlayer.hidePlayer(plugin, bukkitPlayer);
-                            onlinePlayer.showPlayer(plugin, bukkitPlayer);
-                        }
-                    }
-
-                    plugin.getLogger().info("Sent additional tab list update to " + bukkitPlayer.getName());
-                } catch (Exception e) {
-                    plugin.getLogger().warning("Failed to send additional tab list update: " + e.getMessage());
-                }
-            }, 3L);
-        } catch (Exception e) {
-            plugin.getLogger().warning("Error updating client-side player: " + e.getMessage());
-        }
+    @Override
+    protected Packet<?> createInfoRemovePacket(List<UUID> uuids) {
+        return new ClientboundPlayerInfoRemovePacket(uuids);
     }
 
-    private void updateCraftBukkitReferences(ServerPlayer player) {
-        try {
-            Player bukkitPlayer = player.getBukkitEntity();
-
-            if (bukkitPlayer instanceof CraftPlayer) {
-                CraftPlayer craftPlayer = (CraftPlayer) bukkitPlayer;
-
-                // Try to update the entity reference in CraftPlayer
-                Field[] fields = CraftPlayer.class.getDeclaredFields();
-                for (Field field : fields) {
-                    if (field.getType().equals(ServerPlayer.class) ||
-                            field.getType().isAssignableFrom(ServerPlayer.class)) {
-                        field.setAccessible(true);
-                        field.set(craftPlayer, player);
-                        plugin.getLogger().info("Updated CraftPlayer entity reference (field: " + field.getName() + ")");
-                        break;
-                    }
-                }
-            }
-        } catch (Exception e) {
-            plugin.getLogger().warning("Could not update CraftBukkit references: " + e.getMessage());
+    @Override
+    protected Packet<?> createInfoUpdatePacket(Collection<ServerPlayer> handles, boolean includeDisplayName) {
+        EnumSet<ClientboundPlayerInfoUpdatePacket.Action> actions = EnumSet.of(
+                ClientboundPlayerInfoUpdatePacket.Action.ADD_PLAYER,
+                ClientboundPlayerInfoUpdatePacket.Action.UPDATE_GAME_MODE,
+                ClientboundPlayerInfoUpdatePacket.Action.UPDATE_LISTED
+        );
+        if (includeDisplayName) {
+            actions.add(ClientboundPlayerInfoUpdatePacket.Action.UPDATE_DISPLAY_NAME);
         }
+        return new ClientboundPlayerInfoUpdatePacket(actions, handles);
     }
 
     @Override
-    public void cleanupPlayerOnLogout(Player player) {
-        try {
-            ServerPlayer serverPlayer = ((CraftPlayer) player).getHandle();
-            UUID currentUUID = serverPlayer.getUUID();
-
-            plugin.getLogger().info("Cleaning up player " + player.getName() + " with UUID: " + currentUUID);
-
-            // Remove from all entity tracking systems (with better error handling)
-            cleanupEntityFromWorld(serverPlayer);
-
-            // Remove from PlayerList maps
-            removeFromPlayerList(serverPlayer, currentUUID);
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    protected Packet<?> createBundlePacket(List<Packet<?>> packets) {
+        // The constructor's generic signature differs between versions
+        return new ClientboundBundlePacket((Iterable) packets);
+    }
 
-            plugin.getLogger().info("Player cleanup complete for " + player.getName());
+    @Override
+    protected void sendPacket(ServerPlayer viewer, Packet<?> packet) {
+        viewer.connection.send(packet);
+    }
 
-        } catch (Exception e) {
-            plugin.getLogger().severe("Failed to cleanup player on logout: " + e.getMessage());
-            e.printStackTrace();
-        }
+    @Override
+    protected Object getLevel(ServerPlayer handle) {
+        return handle.serverLevel();
     }
 
-    private void cleanupEntityFromWorld(ServerPlayer player) {
-        try {
-            ServerLevel level = player.serverLevel();
-            if (level == null) {
-                plugin.getLogger().warning("Player level is null during cleanup");
-                return;
-            }
-
-            // Remove from chunk tracking
-            try {
-                level.getChunkSource().removeEntity(player);
-                plugin.getLogger().fine("Removed player from chunk tracking");
-            } catch (Exception e) {
-                plugin.getLogger().warning("Could not remove from chunk tracking: " + e.getMessage());
-            }
-
-            // Remove from entity lookup systems (with null checks)
-            removeFromEntityLookup(level, player);
-
-            // Remove from level's entity tracking
-            removeFromLevelTracking(level, player);
-
-        } catch (Exception e) {
-            plugin.getLogger().warning("Could not cleanup entity from world: " + e.getMessage());
-        }
+    @Override
+    protected Class<?> getEntityClass() {
+        return Entity.class;
     }
 
-    private void removeFromEntityLookup(ServerLevel level, ServerPlayer player) {
-        try {
-            // Find the entity lookup/registry and remove the player
-            Field[] fields = ServerLevel.class.getDeclaredFields();
-
-            for (Field field : fields) {
-                try {
-                    field.setAccessible(true);
-                    Object value = field.get(level);
-
-                    // Add null check here to prevent the null pointer error
-                    if (value == null) {
-                        continue; // Skip null fields
-                    }
-
-                    // Look for entity tracking fields
-                    String className = value.getClass().getName();
-                    if (className.contains("EntityLookup") || className.contains("EntityManager") ||
-                            className.contains("EntitySectionStorage") || className.contains("EntityTickList")) {
-
-                        // Try to find and call remove methods
-                        removeEntityFromLookup(value, player);
-                    }
-                } catch (Exception e) {
-                    // Continue with other fields if one fails
-                    plugin.getLogger().fine("Could not access field " + field.getName() + ": " + e.getMessage());
-                }
-            }
-        } catch (Exception e) {
-            plugin.getLogger().warning("Could not access entity lookup: " + e.getMessage());
-        }
+    @Override
+    protected void removeFromChunkTracking(ServerPlayer handle) {
+        handle.serverLevel().getChunkSource().removeEntity(handle);
     }
 
-    private void removeEntityFromLookup(Object entityLookup, ServerPlayer player) {
-        if (entityLookup == null) {
-            return; // Safety check
-        }
+    @Override
+    protected void respawn(ServerPlayer handle) {
+        PlayerList playerList = handle.getServer().getPlayerList();
 
-        try {
-            // Try common remove method names
-            String[] removeMethodNames = {"remove", "removeEntity", "untrack", "unregister", "removeImmediately"};
-
-            for (String methodName : removeMethodNames) {
-                try {
-                    Method removeMethod = entityLookup.getClass().getDeclaredMethod(methodName, Entity.class);
-                    removeMethod.setAccessible(true);
-                    removeMethod.invoke(entityLookup, player);
-                    plugin.getLogger().info("Removed entity using method: " + methodName);
-                    return;
-                } catch (NoSuchMethodException e) {
-                    // Try next method
-                } catch (Exception e) {
-                    plugin.getLogger().fine("Method " + methodName + " failed: " + e.getMessage());
-                }
-            }
-
-            // Try with UUID parameter
-            for (String methodName : removeMethodNames) {
-                try {
-                    Method removeMethod = entityLookup.getClass().getDeclaredMethod(methodName, UUID.class);
-                    removeMethod.setAccessible(true);
-                    removeMethod.invoke(entityLookup, player.getUUID());
-                    plugin.getLogger().info("Removed entity by UUID using method: " + methodName);
-                    return;
-                } catch (NoSuchMethodException e) {
-                    // Try next method
-                } catch (Exception e) {
-                    plugin.getLogger().fine("UUID method " + methodName + " failed: " + e.getMessage());
-                }
-            }
-
-        } catch (Exception e) {
-            plugin.getLogger().warning("Could not remove entity from lookup: " + e.getMessage());
-        }
+        // The respawn method is the server's own, safe way to re-create a player entity.
+        // It takes the player to respawn and a boolean for 'keepAllPlayerData' which relates to death.
+        // We set it to true to indicate this is not a death-respawn.
+        playerList.respawn(handle, true, PlayerRespawnEvent.RespawnReason.PLUGIN); // false for "afterDeath"
     }
 
-    private void removeFromLevelTracking(ServerLevel level, ServerPlayer player) {
-        try {
-            // Remove from the level's entity collections
-            Field[] fields = ServerLevel.class.getDeclaredFields();
-
-            for (Field field : fields) {
-                try {
-                    field.setAccessible(true);
-                    Object value = field.get(level);
-
-                    // Add null check
-                    if (value == null) {
-                        continue;
-                    }
-
-                    if (value instanceof Map) {
-                        Map<?, ?> map = (Map<?, ?>) value;
-
-                        // Remove from any maps that might contain this entity
-                        if (!map.isEmpty()) {
-                            Object firstKey = map.keySet().iterator().next();
-                            if (firstKey instanceof UUID) {
-                                @SuppressWarnings("unchecked")
-                                Map<UUID, ?> uuidMap = (Map<UUID, ?>) value;
-                                Object removed = uuidMap.remove(player.getUUID());
-                                if (removed != null) {
-                                    plugin.getLogger().info("Removed from level UUID map: " + field.getName());
-                                }
-                            }
-                        }
-                    } else if (value instanceof Collection) {
-                        @SuppressWarnings("unchecked")
-                        Collection<Object> collection = (Collection<Object>) value;
-                        boolean removed = collection.remove(player);
-                        if (removed) {
-                            plugin.getLogger().info("Removed from level collection: " + field.getName());
-                        }
-                    }
-                } catch (Exception e) {
-                    // Continue with other fields if one fails
-                    plugin.getLogger().fine("Could not access field " + field.getName() + ": " + e.getMessage());
-                }
-            }
-        } catch (Exception e) {
-            plugin.getLogger().warning("Could not remove from level tracking: " + e.getMessage());
-        }
+    @Override
+    protected void resendClientState(ServerPlayer handle) {
+        // Health, food and experience go out with the next tick's update
+        handle.resetSentInfo();
+        handle.lastSentExp = -1;
+        handle.onUpdateAbilities();
+        handle.containerMenu.sendAllDataToRemote();
     }
 
     @Override
-    public void setPlayerInfoTemporarily(Player player, IdentityData tempIdentity, Runnable callback) {
-        try {
-            ServerPlayer serverPlayer = ((CraftPlayer) player).getHandle();
-
-            // Store current values
-            GameProfile currentProfile = serverPlayer.getGameProfile();
-
-            // Create temporary profile
-            GameProfile tempProfile = new GameProfile(tempIdentity.uuid(), tempIdentity.name());
-            if (tempIdentity.skin() != null && tempIdentity.skin().value() != null) {
-                tempProfile.getProperties().put("textures",
-                        new com.mojang.authlib.properties.Property("textures",
-                                tempIdentity.skin().value(), tempIdentity.skin().signature()));
-            }
-
-            // Temporarily update
-            updateGameProfileSilent(serverPlayer, tempProfile);
-
-            try {
-                callback.run();
-            } finally {
-                // Restore original profile
-                updateGameProfileSilent(serverPlayer, currentProfile);
-            }
-
-        } catch (Exception e) {
-            plugin.getLogger().warning("Failed to temporarily set player info: " + e.getMessage());
-            callback.run(); // Execute anyway
+    protected void writeState(ServerPlayer handle, DataOutputStream out, Set<String> excludedKeys) throws IOException {
+        CompoundTag tag = handle.saveWithoutId(new CompoundTag());
+        for (String key : excludedKeys) {
+            tag.remove(key);
         }
+        NbtIo.write(tag, out);
     }
 
-    /**
-     * Silently updates GameProfile without logging.
-     */
-    private void updateGameProfileSilent(net.minecraft.server.level.ServerPlayer player, GameProfile newProfile) {
-        try {
-            Class<?> currentClass = player.getClass();
-            while (currentClass != null) {
-                Field[] fields = currentClass.getDeclaredFields();
-
-                for (Field field : fields) {
-                    if (field.getType().equals(GameProfile.class)) {
-                        field.setAccessible(true);
-                        field.set(player, newProfile);
-                        return;
-                    }
-                }
-                currentClass = currentClass.getSuperclass();
-            }
-        } catch (Exception e) {
-            // Ignore errors in silent update
+    @Override
+    protected void readState(ServerPlayer handle, DataInputStream in, Set<String> excludedKeys) throws IOException {
+        CompoundTag tag = NbtIo.read(in);
+        for (String key : excludedKeys) {
+            tag.remove(key);
         }
-    }
 
-    @Override
-    public void relogPlayer(Player player) {
-        try {
-            ServerPlayer serverPlayer = ((CraftPlayer) player).getHandle();
-            PlayerList playerList = serverPlayer.getServer().getPlayerList();
+        // The snapshot has no items, so loading it would empty the inventory and the ender chest. The current
+        // stacks are put back, which lets the caller change only the slots that differ.
+        List<ItemStack> inventoryItems = copyItems(handle.getInventory());
+        List<ItemStack> enderChestItems = copyItems(handle.getEnderChestInventory());
 
-            // The respawn method is the server's own, safe way to re-create a player entity.
-            // It takes the player to respawn and a boolean for 'keepAllPlayerData' which relates to death.
-            // We set it to true to indicate this is not a death-respawn.
-            playerList.respawn(serverPlayer, true, PlayerRespawnEvent.RespawnReason.PLUGIN); // false for "afterDeath"
+        // Only the player/living entity data. Entity.load would also reset the position, UUID and world.
+        handle.readAdditionalSaveData(tag);
 
-            plugin.getLogger().info("Successfully performed a server-side respawn for " + player.getName());
+        restoreItems(handle.getInventory(), inventoryItems);
+        restoreItems(handle.getEnderChestInventory(), enderChestItems);
 
-        } catch (Exception e) {
-            plugin.getLogger().severe("CRITICAL FAILURE during player respawn!");
-            e.printStackTrace();
-        }
+        // Entity-level fields that readAdditionalSaveData does not cover
+        if (tag.contains("Fire")) handle.setRemainingFireTicks(tag.getShort("Fire"));
+        if (tag.contains("Air")) handle.setAirSupply(tag.getShort("Air"));
+        if (tag.contains("FallDistance")) handle.fallDistance = tag.getFloat("FallDistance");
+
+        // Flying/abilities are not resent on their own
+        handle.onUpdateAbilities();
     }
 
     @Override
     public void injectPermissible(Player player, Object permissible) throws Exception {
-        // Find the 'perm' field in the CraftHumanEntity class, which holds the permissible.
-        Field permField = CraftHumanEntity.class.getDeclaredField("perm");
-        permField.setAccessible(true);
+        // Replace the permissible held in CraftHumanEntity's 'perm' field.
+        try {
+            PERM_SETTER.invokeExact(player, permissible);
+        } catch (Throwable e) {
+            throw new Exception("Could not inject permissible for " + player.getName(), e);
+        }
+    }
 
-        // Inject the new permissible object.
-        permField.set(player, permissible);
+    private static List<ItemStack> copyItems(Container container) {
+        List<ItemStack> items = new ArrayList<>(container.getContainerSize());
+        for (int slot = 0; slot < container.getContainerSize(); slot++) {
+            items.add(container.getItem(slot));
+        }
+        return items;
     }
 
-    /**
-     * A private helper method to perform the translation from API DTO to NMS object.
-     */
-    private GameProfile createGameProfileFromData(IdentityData data, Player player) {
-        GameProfile profile = new GameProfile(data.uuid(), player.getName());
-        IdentityData.SkinData skin = data.skin();
-        if (skin != null && skin.value() != null && !skin.value().isEmpty() && skin.signature() != null && !skin.signature().isEmpty()) {
-            profile.getProperties().put("textures", new Property("textures", skin.value(), skin.signature()));
+    private static void restoreItems(Container container, List<ItemStack> items) {
+        for (int slot = 0; slot < items.size(); slot++) {
+            container.setItem(slot, items.get(slot));
         }
-        return profile;
     }
 }
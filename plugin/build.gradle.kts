@@ -21,6 +21,7 @@ dependencies {
     implementation(project(":api"))
 
     // NMS
+    implementation(project(":nms:common"))
     implementation(project(":nms:v1_20_R1"))
     implementation(project(":nms:v1_20_R2"))
     implementation(project(":nms:v1_20_R3"))
@@ -42,6 +43,15 @@ dependencies {
 
     implementation("com.google.code.gson:gson:2.10.1")
 
+    // --- Test Dependencies ---
+
+    testImplementation(platform("org.junit:junit-bom:5.10.2"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+    // The compile-only APIs are not on the test classpath otherwise
+    testImplementation("io.papermc.paper:paper-api:1.20.1-R0.1-SNAPSHOT")
+    testImplementation("net.luckperms:api:5.4")
+
     // --- Implementation Dependencies (will be bundled into your JAR) ---
 
     // This is the Java client for the Mineskin API.
@@ -67,6 +77,10 @@ tasks.shadowJar {
     archiveClassifier.set("") // This removes the "-all" suffix, creating a clean "PlayerCharacters-1.0.0-SNAPSHOT.jar"
 }
 
+tasks.test {
+    useJUnitPlatform()
+}
+
 // Make the standard `build` task also run the `shadowJar` task
 tasks.build {
     dependsOn(tasks.shadowJar)
@@ -1,6 +1,7 @@
 package ca.xef5000.playerprofiles;
 
 import ca.xef5000.playerprofiles.api.services.NMSService;
+import ca.xef5000.playerprofiles.api.services.TaskScheduler;
 import ca.xef5000.playerprofiles.commands.CharacterCommand;
 import ca.xef5000.playerprofiles.gui.GuiManager;
 import ca.xef5000.playerprofiles.listeners.IdentityListener;
@@ -8,8 +9,11 @@ import ca.xef5000.playerprofiles.listeners.ProfileListener;
 import ca.xef5000.playerprofiles.managers.*;
 import ca.xef5000.playerprofiles.permissions.LuckPermsInjector;
 import ca.xef5000.playerprofiles.permissions.ProfileContextCalculator;
+import ca.xef5000.playerprofiles.scheduler.BukkitTaskScheduler;
+import ca.xef5000.playerprofiles.scheduler.FoliaTaskScheduler;
 import net.luckperms.api.LuckPerms;
 import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.RegisteredServiceProvider;
 import org.bukkit.plugin.java.JavaPlugin;
@@ -20,6 +24,13 @@ import java.util.logging.Level;
 public final class PlayerProfiles extends JavaPlugin {
 
     private DatabaseManager databaseManager;
+    private BackupManager backupManager;
+    private ProfileSweeper profileSweeper;
+    private ProfileArchiver profileArchiver;
+    private ItemFormatUpgrader itemFormatUpgrader;
+    private PayloadScrubber payloadScrubber;
+    private SwitchScheduler switchScheduler;
+    private TaskScheduler taskScheduler;
     private ProfileManager profileManager;
     private IdentityManager identityManager;
     private PluginCompatibilityManager pluginCompatibilityManager;
@@ -34,6 +45,13 @@ public final class PlayerProfiles extends JavaPlugin {
         ConfigManager.load(this);
         LangManager.load(this);
 
+        if (FoliaTaskScheduler.isSupported()) {
+            this.taskScheduler = new FoliaTaskScheduler(this);
+            getLogger().info("Folia detected, profile switches will run on the players' region threads.");
+        } else {
+            this.taskScheduler = new BukkitTaskScheduler(this);
+        }
+
         RegisteredServiceProvider<LuckPerms> provider = Bukkit.getServicesManager().getRegistration(LuckPerms.class);
         if (provider != null) {
             this.luckPermsApi = provider.getProvider();
@@ -59,15 +77,33 @@ public final class PlayerProfiles extends JavaPlugin {
             return;
         }
 
+        this.backupManager = new BackupManager(this);
+        backupManager.start();
+        this.profileSweeper = new ProfileSweeper(this);
+        profileSweeper.start();
+
+        this.switchScheduler = new SwitchScheduler(this);
+        switchScheduler.start();
         this.profileManager = new ProfileManager(this);
         this.guiManager = new GuiManager(this);
 
+        this.profileArchiver = new ProfileArchiver(this);
+        profileArchiver.start();
+        this.itemFormatUpgrader = new ItemFormatUpgrader(this);
+        itemFormatUpgrader.start();
+        this.payloadScrubber = new PayloadScrubber(this);
+        payloadScrubber.start();
+
         nmsHandler = setupNmsHandler();
         if (nmsHandler == null) {
             getLogger().severe("Could not load NMS handler. Advanced identity features will be disabled.");
         }
 
         this.identityManager = new IdentityManager(nmsHandler, this);
+        // After a reload, players who are already online never fire the login event
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            identityManager.handlePlayerLogin(player);
+        }
         this.pluginCompatibilityManager = new PluginCompatibilityManager(this, nmsHandler);
 
         CharacterCommand characterCommand = new CharacterCommand(this);
@@ -83,6 +119,34 @@ public final class PlayerProfiles extends JavaPlugin {
             guiManager.closeAllGuis();
         }
 
+        if (backupManager != null) {
+            backupManager.stop();
+        }
+
+        if (profileSweeper != null) {
+            profileSweeper.stop();
+        }
+
+        if (profileArchiver != null) {
+            profileArchiver.stop();
+        }
+
+        if (itemFormatUpgrader != null) {
+            itemFormatUpgrader.stop();
+        }
+
+        if (payloadScrubber != null) {
+            payloadScrubber.stop();
+        }
+
+        if (switchScheduler != null) {
+            switchScheduler.stop();
+        }
+
+        if (taskScheduler != null) {
+            taskScheduler.cancelAll();
+        }
+
         if (databaseManager != null) {
             databaseManager.disconnect();
         }
@@ -143,7 +207,7 @@ public final class PlayerProfiles extends JavaPlugin {
             }
 
             Class<?> clazz = Class.forName(implementationClassName);
-            NMSService handler = (NMSService) clazz.getConstructor(Plugin.class).newInstance(this);
+            NMSService handler = (NMSService) clazz.getConstructor(Plugin.class, TaskScheduler.class).newInstance(this, taskScheduler);
             getLogger().info("Successfully loaded NMS implementation for " + nmsRevision);
             return handler;
 
@@ -168,6 +232,34 @@ public final class PlayerProfiles extends JavaPlugin {
         return databaseManager;
     }
 
+    public BackupManager getBackupManager() {
+        return backupManager;
+    }
+
+    public ProfileSweeper getProfileSweeper() {
+        return profileSweeper;
+    }
+
+    public ProfileArchiver getProfileArchiver() {
+        return profileArchiver;
+    }
+
+    public ItemFormatUpgrader getItemFormatUpgrader() {
+        return itemFormatUpgrader;
+    }
+
+    public PayloadScrubber getPayloadScrubber() {
+        return payloadScrubber;
+    }
+
+    public TaskScheduler getTaskScheduler() {
+        return taskScheduler;
+    }
+
+    public SwitchScheduler getSwitchScheduler() {
+        return switchScheduler;
+    }
+
     public ProfileManager getProfileManager() {
         return profileManager;
     }
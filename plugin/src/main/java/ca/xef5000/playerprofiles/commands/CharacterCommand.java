@@ -2,7 +2,6 @@ package ca.xef5000.playerprofiles.commands;
 
 import ca.xef5000.playerprofiles.PlayerProfiles;
 import ca.xef5000.playerprofiles.gui.ProfileSelectionGui;
-import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -148,7 +147,7 @@ public class CharacterCommand implements CommandExecutor, TabCompleter {
             player.sendMessage(ChatColor.GRAY + "Creating profile '" + profileName + "'...");
             plugin.getDatabaseManager().createProfile(player, profileName).thenAccept(newProfile -> {
                 if (newProfile != null) {
-                    Bukkit.getScheduler().runTask(plugin, () -> {
+                    plugin.getTaskScheduler().runForPlayer(player, () -> {
                         // This code block is now running safely on the main server thread.
                         plugin.getProfileManager().savePlayerStateToProfile(player, newProfile);
 
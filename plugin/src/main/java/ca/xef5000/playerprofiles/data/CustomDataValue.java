@@ -0,0 +1,130 @@
+package ca.xef5000.playerprofiles.data;
+
+import ca.xef5000.playerprofiles.api.data.ProfileDataCodec;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * A custom data value as held in {@link ProfileImpl}'s custom data map, next to the raw objects
+ * stored through the untyped API.
+ * Values loaded from the database stay {@link Encoded} until a key reads them, and are then replaced
+ * by their typed form. The int, long and double holders are updated in place, so setting them does not box.
+ */
+public abstract class CustomDataValue {
+
+    private static final Gson GSON = new Gson();
+
+    /**
+     * @return The text to store in the database.
+     */
+    public abstract String encode();
+
+    /**
+     * Gets the value as a plain object, for the untyped {@link ProfileImpl#getCustomData} API.
+     * @param type The type the caller asked for.
+     * @return The value, or null if it can't be read as that type.
+     */
+    abstract Object toObject(Class<?> type);
+
+    /**
+     * A value as loaded from the database, not yet decoded.
+     */
+    public static final class Encoded extends CustomDataValue {
+        private final String encoded;
+
+        public Encoded(String encoded) {
+            this.encoded = encoded;
+        }
+
+        @Override
+        public String encode() {
+            return encoded;
+        }
+
+        @Override
+        Object toObject(Class<?> type) {
+            try {
+                return GSON.fromJson(encoded, type);
+            } catch (JsonParseException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * A value decoded or set through a {@link ca.xef5000.playerprofiles.api.data.ProfileDataKey}.
+     */
+    public static final class Typed<T> extends CustomDataValue {
+        final ProfileDataCodec<T> codec;
+        final T value;
+
+        Typed(ProfileDataCodec<T> codec, T value) {
+            this.codec = codec;
+            this.value = value;
+        }
+
+        @Override
+        public String encode() {
+            return codec.encode(value);
+        }
+
+        @Override
+        Object toObject(Class<?> type) {
+            return value;
+        }
+    }
+
+    static final class IntValue extends CustomDataValue {
+        volatile int value;
+
+        IntValue(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public String encode() {
+            return Integer.toString(value);
+        }
+
+        @Override
+        Object toObject(Class<?> type) {
+            return value;
+        }
+    }
+
+    static final class LongValue extends CustomDataValue {
+        volatile long value;
+
+        LongValue(long value) {
+            this.value = value;
+        }
+
+        @Override
+        public String encode() {
+            return Long.toString(value);
+        }
+
+        @Override
+        Object toObject(Class<?> type) {
+            return value;
+        }
+    }
+
+    static final class DoubleValue extends CustomDataValue {
+        volatile double value;
+
+        DoubleValue(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public String encode() {
+            return Double.toString(value);
+        }
+
+        @Override
+        Object toObject(Class<?> type) {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ca.xef5000.playerprofiles.data;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.lang.ref.SoftReference;
+import java.util.function.Function;
+
+/**
+ * Holds one group of profile items (inventory, armor, ...) either as the raw payload read from the
+ * database or as live ItemStacks.
+ * The payload is only decoded on first access. The decoded array is held softly, so the GC may drop it
+ * under memory pressure and it is decoded again on the next access.
+ * As long as the items were never replaced, the save path can write the raw payload back without re-encoding.
+ */
+public class LazyItemContents {
+
+    private String payload;
+    private Function<String, ItemStack[]> decoder;
+    private SoftReference<ItemStack[]> decoded;
+    // False when the payload was written by an older server version; the save path then re-encodes it
+    private boolean reusable;
+
+    // Set when the contents come from a live player; these are the only copy, so they are held strongly
+    private ItemStack[] items;
+
+    /**
+     * Replaces the contents with a raw payload that will be decoded on first access.
+     * @param payload The payload as stored in the database.
+     * @param decoder Turns the payload into items.
+     * @param reusable Whether the payload may be written back as-is while the items are unchanged.
+     */
+    public synchronized void setPayload(String payload, Function<String, ItemStack[]> decoder, boolean reusable) {
+        this.payload = payload;
+        this.decoder = decoder;
+        this.reusable = reusable;
+        this.decoded = null;
+        this.items = null;
+    }
+
+    /**
+     * Replaces the contents with live items. The raw payload is discarded.
+     * @param items The new items.
+     */
+    public synchronized void set(ItemStack[] items) {
+        this.items = items;
+        this.payload = null;
+        this.decoder = null;
+        this.decoded = null;
+    }
+
+    /**
+     * Gets the items, decoding the payload if needed.
+     * The returned array is shared and must not be modified.
+     * @return The items, or null if none were ever set.
+     */
+    public synchronized ItemStack[] get() {
+        if (items != null || payload == null) {
+            return items;
+        }
+
+        ItemStack[] cached = decoded != null ? decoded.get() : null;
+        if (cached == null) {
+            cached = decoder.apply(payload);
+            decoded = new SoftReference<>(cached);
+        }
+        return cached;
+    }
+
+    /**
+     * @return true if the next {@link #get()} has to decode the payload.
+     */
+    public synchronized boolean needsDecode() {
+        return items == null && payload != null && (decoded == null || decoded.get() == null);
+    }
+
+    /**
+     * @return The raw payload if the items were never replaced since loading and the payload is reusable, otherwise null.
+     */
+    public synchronized String getPayload() {
+        return reusable ? payload : null;
+    }
+}
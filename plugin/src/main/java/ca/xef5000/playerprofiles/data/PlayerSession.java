@@ -0,0 +1,61 @@
+package ca.xef5000.playerprofiles.data;
+
+import ca.xef5000.playerprofiles.api.data.IdentityData;
+import ca.xef5000.playerprofiles.api.data.PlayerIdentity;
+import ca.xef5000.playerprofiles.api.data.Profile;
+import net.luckperms.api.model.user.User;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Everything known about one connected player, from login until quit: who they really are, who they
+ * currently appear as, which profile they are on and whether a switch is in progress.
+ * Sessions are created by the {@link ca.xef5000.playerprofiles.managers.IdentityManager} at login and found
+ * by the player's current UUID, so hot paths resolve all of this with a single lookup.
+ * The mutable fields are written on the main thread and may be read from any thread.
+ */
+public class PlayerSession extends PlayerIdentity {
+
+    private final UUID originalUUID;
+    private volatile Profile activeProfile;
+    private volatile User luckPermsUser;
+    private final AtomicBoolean switching = new AtomicBoolean(false);
+
+    public PlayerSession(UUID originalUUID, IdentityData originalIdentity) {
+        super(originalIdentity);
+        this.originalUUID = originalUUID;
+    }
+
+    /**
+     * @return The UUID the player logged in with. This is the key for everything stored per player.
+     */
+    public UUID getOriginalUUID() { return originalUUID; }
+
+    public Profile getActiveProfile() { return activeProfile; }
+
+    public void setActiveProfile(Profile activeProfile) { this.activeProfile = activeProfile; }
+
+    /**
+     * @return The LuckPerms user of the active profile, or null if none was loaded this session.
+     */
+    public User getLuckPermsUser() { return luckPermsUser; }
+
+    public void setLuckPermsUser(User luckPermsUser) { this.luckPermsUser = luckPermsUser; }
+
+    /**
+     * Marks a profile switch as started.
+     * @return false if another switch is already in progress.
+     */
+    public boolean beginSwitch() {
+        return switching.compareAndSet(false, true);
+    }
+
+    public void endSwitch() {
+        switching.set(false);
+    }
+
+    public boolean isSwitching() {
+        return switching.get();
+    }
+}
@@ -1,6 +1,9 @@
 package ca.xef5000.playerprofiles.data;
 
 import ca.xef5000.playerprofiles.api.data.Profile;
+import ca.xef5000.playerprofiles.api.data.ProfileDataCodec;
+import ca.xef5000.playerprofiles.api.data.ProfileDataKey;
+import com.google.gson.Gson;
 import org.bukkit.GameMode;
 import org.bukkit.Location;
 import org.bukkit.inventory.ItemStack;
@@ -11,11 +14,18 @@ import java.sql.Timestamp;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 public class ProfileImpl implements Profile {
 
+    private static final Gson GSON = new Gson();
+
     // Core Profile Info
     private final UUID characterId;
     private final UUID ownerId;
@@ -24,19 +34,27 @@ public class ProfileImpl implements Profile {
     private Timestamp lastUsedDate;
 
     // Player State Data
-    private ItemStack[] inventoryContents;
-    private ItemStack[] armorContents;
-    private ItemStack[] enderChestContents;
+    private final LazyItemContents inventoryContents = new LazyItemContents();
+    private final LazyItemContents armorContents = new LazyItemContents();
+    private final LazyItemContents enderChestContents = new LazyItemContents();
     private Location location;
     private double health;
     private int foodLevel;
     private float saturation;
+    // Compressed NBT snapshot of the remaining entity data, see NMSService#capturePlayerState
+    private byte[] stateSnapshot;
     private int totalExperience;
     private GameMode gameMode;
     private Collection<PotionEffect> potionEffects;
+    // Set when the stored items failed their checksum or could not be decoded; such a profile is never saved
+    private volatile boolean quarantined;
 
     // API data
     private final Map<String, Map<String, Object>> customData = new ConcurrentHashMap<>();
+    // Namespaces are read from the database on first access. With no loader (a new profile), everything is in memory.
+    private volatile Function<String, Map<String, String>> customDataLoader;
+    private volatile Executor customDataExecutor;
+    private final Set<String> loadedNamespaces = ConcurrentHashMap.newKeySet();
 
     public ProfileImpl(UUID characterId, UUID ownerId, String characterName) {
         this.characterId = characterId;
@@ -66,17 +84,65 @@ public class ProfileImpl implements Profile {
 
     // Player State Data
 
-    public ItemStack[] getInventoryContents() { return inventoryContents; }
+    public ItemStack[] getInventoryContents() { return inventoryContents.get(); }
 
-    public void setInventoryContents(ItemStack[] inventoryContents) { this.inventoryContents = inventoryContents; }
+    public void setInventoryContents(ItemStack[] inventoryContents) { this.inventoryContents.set(inventoryContents); }
 
-    public ItemStack[] getArmorContents() { return armorContents; }
+    public ItemStack[] getArmorContents() { return armorContents.get(); }
 
-    public void setArmorContents(ItemStack[] armorContents) { this.armorContents = armorContents; }
+    public void setArmorContents(ItemStack[] armorContents) { this.armorContents.set(armorContents); }
 
-    public ItemStack[] getEnderChestContents() { return enderChestContents; }
+    /**
+     * Sets the raw item payloads as loaded from the database. They are decoded on first access.
+     * Payloads in an outdated format are re-encoded on the next save, which writes the upgrade back once.
+     * @param isCurrentFormat Tells whether a payload can be written back as-is.
+     */
+    public void setItemPayloads(String inventoryPayload, String armorPayload, String enderChestPayload,
+                                Function<String, ItemStack[]> decoder, Predicate<String> isCurrentFormat) {
+        this.inventoryContents.setPayload(inventoryPayload, decoder, isCurrentFormat.test(inventoryPayload));
+        this.armorContents.setPayload(armorPayload, decoder, isCurrentFormat.test(armorPayload));
+        this.enderChestContents.setPayload(enderChestPayload, decoder, isCurrentFormat.test(enderChestPayload));
+    }
 
-    public void setEnderChestContents(ItemStack[] enderChestContents) { this.enderChestContents = enderChestContents; }
+    /**
+     * @return The raw inventory payload if the inventory was not changed since loading, otherwise null.
+     */
+    public String getInventoryPayload() { return inventoryContents.getPayload(); }
+
+    /**
+     * @return The raw armor payload if the armor was not changed since loading, otherwise null.
+     */
+    public String getArmorPayload() { return armorContents.getPayload(); }
+
+    /**
+     * @return The raw ender chest payload if the ender chest was not changed since loading, otherwise null.
+     */
+    public String getEnderChestPayload() { return enderChestContents.getPayload(); }
+
+    /**
+     * Decodes the item payloads now, so the main thread doesn't have to when the profile is applied.
+     * The payloads are independent, so all three decode in parallel on the given executor, and this waits
+     * for them. Call this from an async thread when a switch to this profile is about to happen.
+     * @param executor Runs the decodes, normally the plugin's async scheduler.
+     */
+    public void decodeItems(Executor executor) {
+        CompletableFuture.allOf(
+                decodeAsync(inventoryContents, executor),
+                decodeAsync(armorContents, executor),
+                decodeAsync(enderChestContents, executor)
+        ).join();
+    }
+
+    private static CompletableFuture<?> decodeAsync(LazyItemContents contents, Executor executor) {
+        if (!contents.needsDecode()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(contents::get, executor);
+    }
+
+    public ItemStack[] getEnderChestContents() { return enderChestContents.get(); }
+
+    public void setEnderChestContents(ItemStack[] enderChestContents) { this.enderChestContents.set(enderChestContents); }
 
     public Location getLocation() { return location; }
 
@@ -108,10 +174,19 @@ public class ProfileImpl implements Profile {
 
     public void setPotionEffects(Collection<PotionEffect> potionEffects) { this.potionEffects = potionEffects; }
 
+    public byte[] getStateSnapshot() { return stateSnapshot; }
+
+    public void setStateSnapshot(byte[] stateSnapshot) { this.stateSnapshot = stateSnapshot; }
+
+    public boolean isQuarantined() { return quarantined; }
+
+    public void setQuarantined(boolean quarantined) { this.quarantined = quarantined; }
+
     // api
 
     @Override
     public void setCustomData(Plugin plugin, String key, Object data) {
+        ensureNamespaceLoaded(plugin.getName());
         if (data == null) {
             customData.computeIfPresent(plugin.getName(), (k, v) -> {
                 v.remove(key);
@@ -124,17 +199,245 @@ public class ProfileImpl implements Profile {
 
     @Override
     public <T> Optional<T> getCustomData(Plugin plugin, String key, Class<T> type) {
+        ensureNamespaceLoaded(plugin.getName());
         Map<String, Object> pluginData = customData.get(plugin.getName());
         if (pluginData == null) {
             return Optional.empty();
         }
         Object value = pluginData.get(key);
+        if (value instanceof CustomDataValue stored) {
+            value = stored.toObject(type);
+        }
         if (value != null && type.isInstance(value)) {
             return Optional.of(type.cast(value));
         }
         return Optional.empty();
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> get(ProfileDataKey<T> key) {
+        Object raw = getRawCustomData(key);
+        if (raw == null) {
+            return Optional.empty();
+        }
+        if (raw instanceof CustomDataValue.Typed<?> typed && typed.codec == key.getCodec()) {
+            return Optional.of((T) typed.value);
+        }
+
+        T value;
+        try {
+            value = key.getCodec().decode(encodeCustomData(raw));
+        } catch (RuntimeException e) {
+            return Optional.empty();
+        }
+        if (value == null) {
+            return Optional.empty();
+        }
+        // Keep the decoded form so later reads skip the codec. Primitive holders stay as they are.
+        if (!(raw instanceof CustomDataValue) || raw instanceof CustomDataValue.Encoded) {
+            replaceRawCustomData(key, raw, new CustomDataValue.Typed<>(key.getCodec(), value));
+        }
+        return Optional.of(value);
+    }
+
+    @Override
+    public <T> void set(ProfileDataKey<T> key, T value) {
+        if (value == null) {
+            remove(key);
+        } else if (key instanceof ProfileDataKey.IntKey intKey) {
+            setInt(intKey, (Integer) value);
+        } else if (key instanceof ProfileDataKey.LongKey longKey) {
+            setLong(longKey, (Long) value);
+        } else if (key instanceof ProfileDataKey.DoubleKey doubleKey) {
+            setDouble(doubleKey, (Double) value);
+        } else {
+            putRawCustomData(key, new CustomDataValue.Typed<>(key.getCodec(), value));
+        }
+    }
+
+    @Override
+    public void remove(ProfileDataKey<?> key) {
+        ensureNamespaceLoaded(key.getNamespace());
+        customData.computeIfPresent(key.getNamespace(), (k, v) -> {
+            v.remove(key.getKey());
+            return v.isEmpty() ? null : v;
+        });
+    }
+
+    @Override
+    public int getInt(ProfileDataKey.IntKey key, int defaultValue) {
+        Object raw = getRawCustomData(key);
+        if (raw instanceof CustomDataValue.IntValue holder) {
+            return holder.value;
+        }
+        if (raw == null) {
+            return defaultValue;
+        }
+        try {
+            int value = ProfileDataCodec.INT.decode(encodeCustomData(raw));
+            replaceRawCustomData(key, raw, new CustomDataValue.IntValue(value));
+            return value;
+        } catch (RuntimeException e) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public void setInt(ProfileDataKey.IntKey key, int value) {
+        if (getRawCustomData(key) instanceof CustomDataValue.IntValue holder) {
+            holder.value = value;
+        } else {
+            putRawCustomData(key, new CustomDataValue.IntValue(value));
+        }
+    }
+
+    @Override
+    public long getLong(ProfileDataKey.LongKey key, long defaultValue) {
+        Object raw = getRawCustomData(key);
+        if (raw instanceof CustomDataValue.LongValue holder) {
+            return holder.value;
+        }
+        if (raw == null) {
+            return defaultValue;
+        }
+        try {
+            long value = ProfileDataCodec.LONG.decode(encodeCustomData(raw));
+            replaceRawCustomData(key, raw, new CustomDataValue.LongValue(value));
+            return value;
+        } catch (RuntimeException e) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public void setLong(ProfileDataKey.LongKey key, long value) {
+        if (getRawCustomData(key) instanceof CustomDataValue.LongValue holder) {
+            holder.value = value;
+        } else {
+            putRawCustomData(key, new CustomDataValue.LongValue(value));
+        }
+    }
+
+    @Override
+    public double getDouble(ProfileDataKey.DoubleKey key, double defaultValue) {
+        Object raw = getRawCustomData(key);
+        if (raw instanceof CustomDataValue.DoubleValue holder) {
+            return holder.value;
+        }
+        if (raw == null) {
+            return defaultValue;
+        }
+        try {
+            double value = ProfileDataCodec.DOUBLE.decode(encodeCustomData(raw));
+            replaceRawCustomData(key, raw, new CustomDataValue.DoubleValue(value));
+            return value;
+        } catch (RuntimeException e) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public void setDouble(ProfileDataKey.DoubleKey key, double value) {
+        if (getRawCustomData(key) instanceof CustomDataValue.DoubleValue holder) {
+            holder.value = value;
+        } else {
+            putRawCustomData(key, new CustomDataValue.DoubleValue(value));
+        }
+    }
+
+    /**
+     * Encodes a value from the custom data map for the database. Typed values use their codec,
+     * values set through the untyped API are written as JSON.
+     * @param value A value from {@link #getCustomDataMap()}.
+     * @return The text to store.
+     */
+    public static String encodeCustomData(Object value) {
+        return value instanceof CustomDataValue stored ? stored.encode() : GSON.toJson(value);
+    }
+
+    @Override
+    public CompletableFuture<Void> loadCustomData(Plugin plugin) {
+        String namespace = plugin.getName();
+        if (isCustomDataLoaded(namespace)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> ensureNamespaceLoaded(namespace), customDataExecutor);
+    }
+
+    /**
+     * Makes custom data load per namespace, on first access.
+     * @param loader Reads a namespace's rows as key to encoded value, or returns null if the read failed.
+     * @param preloaded Namespaces whose rows were already put in the map.
+     * @param executor Runs the reads asked for through {@link #loadCustomData}.
+     */
+    public void setCustomDataLoader(Function<String, Map<String, String>> loader, Collection<String> preloaded, Executor executor) {
+        loadedNamespaces.addAll(preloaded);
+        this.customDataExecutor = executor;
+        this.customDataLoader = loader;
+    }
+
+    /**
+     * @return true if the namespace's rows are in memory, so the save path may write it.
+     */
+    public boolean isCustomDataLoaded(String namespace) {
+        return customDataLoader == null || loadedNamespaces.contains(namespace);
+    }
+
+    /**
+     * Gets the namespaces the save path should write.
+     * @return The loaded namespaces, or null if every namespace is in memory.
+     */
+    public Set<String> getLoadedCustomDataNamespaces() {
+        return customDataLoader == null ? null : loadedNamespaces;
+    }
+
+    /**
+     * Reads a namespace from the database if it wasn't loaded yet. This blocks on the database, so plugins
+     * that read custom data on the main thread should prefetch their namespace or call {@link #loadCustomData}.
+     */
+    private void ensureNamespaceLoaded(String namespace) {
+        Function<String, Map<String, String>> loader = customDataLoader;
+        if (loader == null || loadedNamespaces.contains(namespace)) {
+            return;
+        }
+
+        synchronized (loadedNamespaces) {
+            if (loadedNamespaces.contains(namespace)) {
+                return;
+            }
+            Map<String, String> rows = loader.apply(namespace);
+            // On a failed read the namespace stays unloaded, so the save path can't overwrite it with partial data
+            if (rows == null) {
+                return;
+            }
+            if (!rows.isEmpty()) {
+                Map<String, Object> pluginData = customData.computeIfAbsent(namespace, k -> new ConcurrentHashMap<>());
+                rows.forEach((key, value) -> pluginData.putIfAbsent(key, new CustomDataValue.Encoded(value)));
+            }
+            loadedNamespaces.add(namespace);
+        }
+    }
+
+    private Object getRawCustomData(ProfileDataKey<?> key) {
+        ensureNamespaceLoaded(key.getNamespace());
+        Map<String, Object> pluginData = customData.get(key.getNamespace());
+        return pluginData != null ? pluginData.get(key.getKey()) : null;
+    }
+
+    private void putRawCustomData(ProfileDataKey<?> key, Object value) {
+        ensureNamespaceLoaded(key.getNamespace());
+        customData.computeIfAbsent(key.getNamespace(), k -> new ConcurrentHashMap<>()).put(key.getKey(), value);
+    }
+
+    // Only swaps if nobody set the key in the meantime
+    private void replaceRawCustomData(ProfileDataKey<?> key, Object expected, Object value) {
+        Map<String, Object> pluginData = customData.get(key.getNamespace());
+        if (pluginData != null) {
+            pluginData.replace(key.getKey(), expected, value);
+        }
+    }
+
     /**
      * Allows the DatabaseManager to get the entire custom data map for serialization.
      * @return The complete custom data map.
@@ -3,7 +3,6 @@ package ca.xef5000.playerprofiles.gui;
 import ca.xef5000.playerprofiles.PlayerProfiles;
 import ca.xef5000.playerprofiles.api.data.Profile;
 import ca.xef5000.playerprofiles.managers.LangManager;
-import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
@@ -183,7 +182,7 @@ public class ProfileSelectionGui extends Gui {
                     this.isLoading = false;
 
                     // Update GUI on main thread
-                    Bukkit.getScheduler().runTask(plugin, this::refresh);
+                    plugin.getTaskScheduler().runForPlayer(player, this::refresh);
                 })
                 .exceptionally(throwable -> {
                     plugin.getLogger().severe("Failed to load profiles for " + player.getName() + ": " + throwable.getMessage());
@@ -199,7 +198,7 @@ public class ProfileSelectionGui extends Gui {
         
         plugin.getProfileManager().switchProfile(player, profile.getProfileId())
                 .thenAccept(success -> {
-                    Bukkit.getScheduler().runTask(plugin, () -> {
+                    plugin.getTaskScheduler().runForPlayer(player, () -> {
                         if (success) {
                             player.sendMessage(LangManager.getMessage("messages.profile_selected", 
                                     LangManager.placeholder("profile_name", profile.getProfileName())));
@@ -212,7 +211,7 @@ public class ProfileSelectionGui extends Gui {
                 })
                 .exceptionally(throwable -> {
                     plugin.getLogger().severe("Failed to select profile for " + player.getName() + ": " + throwable.getMessage());
-                    Bukkit.getScheduler().runTask(plugin, () -> {
+                    plugin.getTaskScheduler().runForPlayer(player, () -> {
                         player.sendMessage(LangManager.getMessage("errors.unknown_error"));
                         refresh();
                     });
@@ -234,14 +233,14 @@ public class ProfileSelectionGui extends Gui {
                 .thenAccept(newProfile -> {
                     if (newProfile != null) {
                         // Save current player state to the new profile
-                        Bukkit.getScheduler().runTask(plugin, () -> {
+                        plugin.getTaskScheduler().runForPlayer(player, () -> {
                             plugin.getProfileManager().savePlayerStateToProfile(player, newProfile);
                             
                             // Save to database and switch to the new profile
                             plugin.getDatabaseManager().saveProfile(newProfile)
                                     .thenCompose(v -> plugin.getProfileManager().switchProfile(player, newProfile.getProfileId()))
                                     .thenAccept(success -> {
-                                        Bukkit.getScheduler().runTask(plugin, () -> {
+                                        plugin.getTaskScheduler().runForPlayer(player, () -> {
                                             if (success) {
                                                 player.sendMessage(LangManager.getMessage("messages.profile_created", 
                                                         LangManager.placeholder("profile_name", newProfile.getProfileName())));
@@ -254,7 +253,7 @@ public class ProfileSelectionGui extends Gui {
                                     });
                         });
                     } else {
-                        Bukkit.getScheduler().runTask(plugin, () -> {
+                        plugin.getTaskScheduler().runForPlayer(player, () -> {
                             player.sendMessage(LangManager.getMessage("messages.profile_creation_failed"));
                             refresh();
                         });
@@ -262,7 +261,7 @@ public class ProfileSelectionGui extends Gui {
                 })
                 .exceptionally(throwable -> {
                     plugin.getLogger().severe("Failed to create profile for " + player.getName() + ": " + throwable.getMessage());
-                    Bukkit.getScheduler().runTask(plugin, () -> {
+                    plugin.getTaskScheduler().runForPlayer(player, () -> {
                         player.sendMessage(LangManager.getMessage("errors.unknown_error"));
                         refresh();
                     });
@@ -289,7 +288,7 @@ public class ProfileSelectionGui extends Gui {
         // If player doesn't have an active profile, they must select one
         if (plugin.getProfileManager().getActiveProfile(player) == null) {
             // Reopen the GUI after a short delay to prevent spam
-            Bukkit.getScheduler().runTaskLater(plugin, () -> {
+            plugin.getTaskScheduler().runForPlayerLater(player, () -> {
                 if (player.isOnline()) {
                     player.sendMessage(LangManager.getMessage("messages.must_select_profile"));
                     new ProfileSelectionGui(plugin, player).open();
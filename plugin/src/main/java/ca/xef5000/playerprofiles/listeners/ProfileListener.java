@@ -3,7 +3,6 @@ package ca.xef5000.playerprofiles.listeners;
 import ca.xef5000.playerprofiles.PlayerProfiles;
 import ca.xef5000.playerprofiles.api.data.Profile;
 import ca.xef5000.playerprofiles.gui.ProfileSelectionGui;
-import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -22,8 +21,9 @@ public class ProfileListener implements Listener {
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
         // Run this slightly delayed to ensure other plugins have loaded the player
-        Bukkit.getScheduler().runTaskLater(plugin, () -> {
-            handlePlayerJoin(event.getPlayer());
+        Player player = event.getPlayer();
+        plugin.getTaskScheduler().runForPlayerLater(player, () -> {
+            handlePlayerJoin(player);
         }, 20L); // 1 second delay
     }
 
@@ -36,7 +36,7 @@ public class ProfileListener implements Listener {
                         plugin.getDatabaseManager().loadProfile(profileIdOpt.get()).thenAccept(profileOpt -> {
                             if (profileOpt.isPresent()) {
                                 // Profile exists, switch to it
-                                Bukkit.getScheduler().runTask(plugin, () -> {
+                                plugin.getTaskScheduler().runForPlayer(player, () -> {
                                     plugin.getProfileManager().switchProfile(player, profileIdOpt.get()).thenAccept(success -> {
                                         if (success) {
                                             plugin.getLogger().info("Auto-loaded profile '" + profileOpt.get().getProfileName() + "' for " + player.getName());
@@ -48,13 +48,13 @@ public class ProfileListener implements Listener {
                                 });
                             } else {
                                 // Profile doesn't exist anymore, show profile selection GUI
-                                Bukkit.getScheduler().runTask(plugin, () -> openProfileSelectionGui(player));
+                                plugin.getTaskScheduler().runForPlayer(player, () -> openProfileSelectionGui(player));
                             }
                         });
                     } else {
                         // No active profile, check if player has any profiles
                         plugin.getDatabaseManager().getProfilesForPlayer(player).thenAccept(profiles -> {
-                            Bukkit.getScheduler().runTask(plugin, () -> {
+                            plugin.getTaskScheduler().runForPlayer(player, () -> {
                                 if (profiles.isEmpty()) {
                                     // No profiles at all, show profile selection GUI
                                     openProfileSelectionGui(player);
@@ -70,7 +70,7 @@ public class ProfileListener implements Listener {
 
     private void openProfileSelectionGui(org.bukkit.entity.Player player) {
         // Small delay to ensure the player is fully loaded
-        Bukkit.getScheduler().runTaskLater(plugin, () -> {
+        plugin.getTaskScheduler().runForPlayerLater(player, () -> {
             if (player.isOnline()) {
                 new ProfileSelectionGui(plugin, player).open();
             }
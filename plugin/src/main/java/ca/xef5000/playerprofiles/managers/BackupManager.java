@@ -0,0 +1,170 @@
+package ca.xef5000.playerprofiles.managers;
+
+import ca.xef5000.playerprofiles.PlayerProfiles;
+import ca.xef5000.playerprofiles.api.services.TaskScheduler;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * Takes scheduled online backups of the SQLite database.
+ * Each backup is written with VACUUM INTO on its own connection, off the main thread.
+ * The main connection runs in WAL mode, so the backup only reads a snapshot and never takes the write lock.
+ */
+public class BackupManager {
+
+    private static final String BACKUP_PREFIX = "profiles-";
+    private static final String BACKUP_SUFFIX = ".db";
+
+    private final PlayerProfiles plugin;
+    private final File backupFolder;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private TaskScheduler.Task task;
+
+    private volatile long lastBackupMillis = -1;
+    private volatile long lastBackupBytes = -1;
+
+    public BackupManager(PlayerProfiles plugin) {
+        this.plugin = plugin;
+        this.backupFolder = new File(plugin.getDataFolder(), "backups");
+    }
+
+    /**
+     * Schedules the repeating backup job if backups are enabled and the database is SQLite.
+     */
+    public void start() {
+        if (!ConfigManager.isBackupEnabled()) {
+            return;
+        }
+        if (!ConfigManager.getDatabaseType().equals("SQLITE")) {
+            plugin.getLogger().info("Scheduled backups are only available for SQLITE. Skipping.");
+            return;
+        }
+
+        long intervalTicks = ConfigManager.getBackupIntervalMinutes() * 60L * 20L;
+        task = plugin.getTaskScheduler().runAsyncTimer(this::runBackup, intervalTicks, intervalTicks);
+        plugin.getLogger().info("Scheduled database backups every " + ConfigManager.getBackupIntervalMinutes() + " minutes.");
+    }
+
+    /**
+     * Cancels the repeating backup job.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Asynchronously takes a backup right now.
+     * @return A CompletableFuture that completes with true if a backup was written.
+     */
+    public CompletableFuture<Boolean> backupNow() {
+        return CompletableFuture.supplyAsync(this::runBackup,
+                runnable -> plugin.getTaskScheduler().runAsync(runnable));
+    }
+
+    /**
+     * Writes one backup and rotates old ones. MUST NOT be run on the main server thread.
+     * @return true if a backup was written.
+     */
+    private boolean runBackup() {
+        if (!running.compareAndSet(false, true)) {
+            plugin.getLogger().warning("A database backup is already running, skipping this one.");
+            return false;
+        }
+
+        try {
+            if (!backupFolder.exists() && !backupFolder.mkdirs()) {
+                plugin.getLogger().severe("Could not create backup folder " + backupFolder.getAbsolutePath());
+                return false;
+            }
+
+            String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+            File target = new File(backupFolder, BACKUP_PREFIX + timestamp + BACKUP_SUFFIX);
+            File temp = new File(backupFolder, target.getName() + ".tmp");
+            if (temp.exists() && !temp.delete()) {
+                plugin.getLogger().severe("Could not remove stale backup file " + temp.getName());
+                return false;
+            }
+
+            long start = System.nanoTime();
+            String jdbcUrl = "jdbc:sqlite:" + plugin.getDatabaseManager().getDatabaseFile().getAbsolutePath();
+            try (Connection backupConnection = DriverManager.getConnection(jdbcUrl);
+                 Statement statement = backupConnection.createStatement()) {
+                // Give up instead of stalling if another connection holds a lock for longer than the slice
+                statement.execute("PRAGMA busy_timeout = " + ConfigManager.getBackupLockTimeoutMillis() + ";");
+                statement.execute("VACUUM INTO '" + temp.getAbsolutePath().replace("'", "''") + "';");
+            }
+
+            if (!temp.renameTo(target)) {
+                plugin.getLogger().severe("Could not move backup into place: " + target.getName());
+                temp.delete();
+                return false;
+            }
+
+            lastBackupMillis = (System.nanoTime() - start) / 1_000_000L;
+            lastBackupBytes = target.length();
+            plugin.getLogger().info("Database backup " + target.getName() + " written in " + lastBackupMillis
+                    + "ms (" + (lastBackupBytes / 1024L) + " KB).");
+
+            rotateBackups();
+            return true;
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Database backup failed, will retry on the next run", e);
+            return false;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Deletes the oldest backups so that only the configured number are kept.
+     */
+    private void rotateBackups() {
+        File[] backups = backupFolder.listFiles((dir, name) -> name.startsWith(BACKUP_PREFIX) && name.endsWith(BACKUP_SUFFIX));
+        if (backups == null) {
+            return;
+        }
+
+        int keep = ConfigManager.getBackupKeepCount();
+        if (backups.length <= keep) {
+            return;
+        }
+
+        // Names embed a sortable timestamp, so newest sort last
+        Arrays.sort(backups, Comparator.comparing(File::getName));
+        for (int i = 0; i < backups.length - keep; i++) {
+            if (backups[i].delete()) {
+                plugin.getLogger().info("Deleted old database backup " + backups[i].getName());
+            } else {
+                plugin.getLogger().warning("Could not delete old database backup " + backups[i].getName());
+            }
+        }
+    }
+
+    /**
+     * @return How long the last successful backup took in milliseconds, or -1 if none has run.
+     */
+    public long getLastBackupMillis() {
+        return lastBackupMillis;
+    }
+
+    /**
+     * @return The size of the last successful backup in bytes, or -1 if none has run.
+     */
+    public long getLastBackupBytes() {
+        return lastBackupBytes;
+    }
+}
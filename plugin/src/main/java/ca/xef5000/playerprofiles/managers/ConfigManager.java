@@ -44,4 +44,100 @@ public class ConfigManager {
     public static boolean isMySqlSslEnabled() {
         return config.getBoolean("database.mysql.useSSL", false);
     }
+
+    public static boolean isBackupEnabled() {
+        return config.getBoolean("backup.enabled", true);
+    }
+
+    public static long getBackupIntervalMinutes() {
+        return Math.max(1L, config.getLong("backup.interval-minutes", 360L));
+    }
+
+    public static int getBackupKeepCount() {
+        return Math.max(1, config.getInt("backup.keep", 5));
+    }
+
+    public static int getBackupLockTimeoutMillis() {
+        return Math.max(0, config.getInt("backup.lock-timeout-millis", 250));
+    }
+
+    public static boolean isSweeperEnabled() {
+        return config.getBoolean("sweeper.enabled", true);
+    }
+
+    public static long getSweeperIntervalMinutes() {
+        return Math.max(1L, config.getLong("sweeper.interval-minutes", 60L));
+    }
+
+    public static int getSweeperBatchSize() {
+        return Math.max(1, config.getInt("sweeper.batch-size", 100));
+    }
+
+    public static long getSweeperTombstoneGraceHours() {
+        return Math.max(0L, config.getLong("sweeper.tombstone-grace-hours", 24L));
+    }
+
+    public static int getSweeperVacuumPages() {
+        return Math.max(0, config.getInt("sweeper.vacuum-pages", 1000));
+    }
+
+    public static boolean isArchiveEnabled() {
+        return config.getBoolean("archive.enabled", true);
+    }
+
+    public static long getArchiveAfterDays() {
+        return Math.max(1L, config.getLong("archive.after-days", 90L));
+    }
+
+    public static long getArchiveIntervalMinutes() {
+        return Math.max(1L, config.getLong("archive.interval-minutes", 60L));
+    }
+
+    public static int getArchiveBatchSize() {
+        return Math.max(1, config.getInt("archive.batch-size", 50));
+    }
+
+    public static boolean isItemDedupEnabled() {
+        return config.getBoolean("item-dedup.enabled", false);
+    }
+
+    public static int getItemDedupCacheSize() {
+        return Math.max(16, config.getInt("item-dedup.cache-size", 4096));
+    }
+
+    public static boolean isItemUpgradeEnabled() {
+        return config.getBoolean("item-upgrade.enabled", true);
+    }
+
+    public static long getItemUpgradeIntervalMinutes() {
+        return Math.max(1L, config.getLong("item-upgrade.interval-minutes", 5L));
+    }
+
+    public static int getItemUpgradeBatchSize() {
+        return Math.max(1, config.getInt("item-upgrade.batch-size", 25));
+    }
+
+    public static boolean isScrubberEnabled() {
+        return config.getBoolean("scrubber.enabled", true);
+    }
+
+    public static long getScrubberIntervalMinutes() {
+        return Math.max(1L, config.getLong("scrubber.interval-minutes", 10L));
+    }
+
+    public static int getScrubberBatchSize() {
+        return Math.max(1, config.getInt("scrubber.batch-size", 200));
+    }
+
+    public static boolean isSoftSwitchEnabled() {
+        return config.getBoolean("switching.soft-switch", true);
+    }
+
+    public static long getChunkPreloadTimeoutMillis() {
+        return Math.max(0L, config.getLong("switching.chunk-preload-timeout-millis", 2000L));
+    }
+
+    public static long getSwitchTickBudgetMillis() {
+        return Math.max(1L, config.getLong("switching.tick-budget-millis", 10L));
+    }
 }
@@ -2,8 +2,13 @@ package ca.xef5000.playerprofiles.managers;
 
 import ca.xef5000.playerprofiles.PlayerProfiles;
 import ca.xef5000.playerprofiles.api.data.Profile;
+import ca.xef5000.playerprofiles.data.CustomDataValue;
+import ca.xef5000.playerprofiles.data.PlayerSession;
 import ca.xef5000.playerprofiles.data.ProfileImpl;
 import ca.xef5000.playerprofiles.util.Base64ItemSerializer;
+import ca.xef5000.playerprofiles.util.ItemBlobCache;
+import ca.xef5000.playerprofiles.util.PotionEffectCodec;
+import ca.xef5000.playerprofiles.util.ProfileArchiveCodec;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import org.bukkit.Bukkit;
@@ -12,43 +17,153 @@ import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
 import org.bukkit.potion.PotionEffect;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.sql.*;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 import java.util.logging.Level;
+import java.util.zip.CRC32C;
 
 public class DatabaseManager {
 
     private final PlayerProfiles plugin;
     private Connection connection;
+    // Every use of the connection holds this lock, so a statement from one thread can never run inside,
+    // or be rolled back with, another thread's transaction
+    private final Object connectionLock = new Object();
     private final Gson gson = new Gson();
     private final Type potionEffectCollectionType = new TypeToken<Collection<PotionEffect>>() {}.getType();
 
+    // Active profile pointers waiting to be written, keyed by original player UUID. Rapid re-switches
+    // overwrite the entry, so only the latest pointer is written. An empty string means "no active profile".
+    private final Map<UUID, String> pendingActiveProfiles = new ConcurrentHashMap<>();
+    private static final String NO_ACTIVE_PROFILE = "";
+    private String upsertActiveProfileSql = UPSERT_ACTIVE_PROFILE_SQLITE;
+
+    // Content-addressed item store. Blobs unreferenced in the previous GC run; only these may be deleted next time.
+    private final ItemBlobCache itemBlobCache = new ItemBlobCache(ConfigManager.getItemDedupCacheSize());
+    private Set<String> unreferencedItemBlobs = new HashSet<>();
+    // Hashes that writes referenced while a GC run is marking, which that run must not delete. Null between runs.
+    private volatile Set<String> itemBlobsTouchedDuringGc;
+    private String insertItemBlobSql = INSERT_ITEM_BLOB_SQLITE;
+    private final int itemDataVersion;
+
+    // Interned world names, both ways. Ids never change once assigned, so these only grow.
+    private final Map<String, Integer> worldIds = new ConcurrentHashMap<>();
+    private final Map<Integer, String> worldNames = new ConcurrentHashMap<>();
+    private String insertWorldSql = INSERT_WORLD_SQLITE;
+    private String insertQuarantineSql = INSERT_QUARANTINE_SQLITE;
+
+    // Custom data namespaces loaded together with every profile; all others load on first access
+    private final Set<String> prefetchedNamespaces = ConcurrentHashMap.newKeySet();
+
+    // Archive tier counters, exposed through getArchiveStats()
+    private final AtomicLong archivedCount = new AtomicLong();
+    private final AtomicLong archiveNanos = new AtomicLong();
+    private final AtomicLong rehydratedCount = new AtomicLong();
+    private final AtomicLong rehydrateNanos = new AtomicLong();
+
     // SQL Queries
     private static final String CREATE_PROFILE = "INSERT INTO pc_profiles (id, owner_uuid, profile_name, last_used_date) VALUES (?, ?, ?, ?);";
     private static final String CREATE_PROFILE_DATA = "INSERT INTO pc_profile_data (profile_id) VALUES (?);";
 
     private static final String UPDATE_PROFILE = "UPDATE pc_profiles SET profile_name = ?, last_used_date = ? WHERE id = ?;";
-    private static final String UPDATE_PROFILE_DATA = "UPDATE pc_profile_data SET inventory = ?, armor = ?, location = ?, health = ?, " +
-            "food_level = ?, experience = ?, gamemode = ?, potion_effects = ? WHERE profile_id = ?;";
+    // The legacy JSON location column is cleared on save; the numeric columns replace it
+    private static final String UPDATE_PROFILE_DATA = "UPDATE pc_profile_data SET inventory = ?, armor = ?, location = NULL, " +
+            "world_id = ?, loc_x = ?, loc_y = ?, loc_z = ?, loc_yaw = ?, loc_pitch = ?, health = ?, " +
+            "food_level = ?, experience = ?, gamemode = ?, potion_effects = ?, ender_chest = ?, state_snapshot = ? WHERE profile_id = ?;";
 
-    private static final String GET_PROFILE_BY_ID = "SELECT * FROM pc_profiles WHERE id = ?;";
+    private static final String GET_PROFILE_BY_ID = "SELECT * FROM pc_profiles WHERE id = ? AND deleted_at IS NULL;";
     private static final String GET_PROFILE_DATA_BY_ID = "SELECT * FROM pc_profile_data WHERE profile_id = ?;";
-    private static final String GET_PROFILES_BY_OWNER = "SELECT * FROM pc_profiles WHERE owner_uuid = ? ORDER BY last_used_date DESC;";
+    private static final String GET_PROFILES_BY_OWNER = "SELECT * FROM pc_profiles WHERE owner_uuid = ? AND deleted_at IS NULL ORDER BY last_used_date DESC;";
+
+    private static final String TOMBSTONE_PROFILE = "UPDATE pc_profiles SET deleted_at = ? WHERE id = ? AND deleted_at IS NULL;";
+    private static final String CLEAR_ACTIVE_PROFILE_POINTERS = "UPDATE pc_players SET active_profile_id = NULL WHERE active_profile_id = ?;";
 
+    // Sweeper queries. Ids are selected first and then deleted one by one in a batch, which works on both SQLite and MySQL.
+    private static final String SELECT_TOMBSTONED_PROFILES = "SELECT id FROM pc_profiles WHERE deleted_at IS NOT NULL AND deleted_at < ? LIMIT ?;";
+    private static final String SELECT_ORPHANED_PROFILE_DATA = "SELECT d.profile_id FROM pc_profile_data d " +
+            "LEFT JOIN pc_profiles p ON p.id = d.profile_id WHERE p.id IS NULL LIMIT ?;";
+    private static final String SELECT_ORPHANED_CUSTOM_DATA = "SELECT DISTINCT c.profile_id FROM pc_custom_data c " +
+            "LEFT JOIN pc_profiles p ON p.id = c.profile_id WHERE p.id IS NULL LIMIT ?;";
     private static final String DELETE_PROFILE = "DELETE FROM pc_profiles WHERE id = ?;";
+    private static final String DELETE_PROFILE_DATA = "DELETE FROM pc_profile_data WHERE profile_id = ?;";
+    private static final String CLEAR_DANGLING_ACTIVE_PROFILES = "UPDATE pc_players SET active_profile_id = NULL " +
+            "WHERE active_profile_id IS NOT NULL AND active_profile_id NOT IN (SELECT id FROM pc_profiles WHERE deleted_at IS NULL);";
+
+    // Archive tier queries
+    private static final String SELECT_COLD_PROFILES = "SELECT id FROM pc_profiles WHERE archived_at IS NULL AND deleted_at IS NULL " +
+            "AND last_used_date < ? ORDER BY last_used_date LIMIT ?;";
+    private static final String GET_CUSTOM_DATA_ROWS = "SELECT namespace, data_key, data_value FROM pc_custom_data WHERE profile_id = ?;";
+    private static final String INSERT_ARCHIVE = "INSERT INTO pc_profile_archive (profile_id, payload, archived_at) VALUES (?, ?, ?);";
+    private static final String GET_ARCHIVE = "SELECT payload FROM pc_profile_archive WHERE profile_id = ?;";
+    private static final String DELETE_ARCHIVE = "DELETE FROM pc_profile_archive WHERE profile_id = ?;";
+    private static final String SET_ARCHIVED_AT = "UPDATE pc_profiles SET archived_at = ? WHERE id = ?;";
+
+    // Item columns are stamped with the data version they were written at: "v3700:" followed by the payload.
+    // Older payloads are upgraded by the server's DataFixer when decoded, then re-encoded on save.
+    private static final String ITEM_VERSION_PREFIX = "v";
+    // Since then the version is followed by the CRC32C of the payload as 8 hex digits: "v3700:1a2b3c4d:" + payload
+    private static final int ITEM_CHECKSUM_LENGTH = 8;
+    private static final String SELECT_OUTDATED_ITEM_ROWS = "SELECT profile_id, inventory, armor, ender_chest FROM pc_profile_data " +
+            "WHERE profile_id > ? AND (inventory NOT LIKE ? OR armor NOT LIKE ? OR ender_chest NOT LIKE ?) " +
+            "ORDER BY profile_id LIMIT ?;";
+    private static final String GET_ITEM_COLUMNS = "SELECT inventory, armor, ender_chest FROM pc_profile_data WHERE profile_id = ?;";
+    private static final String UPDATE_ITEM_COLUMNS = "UPDATE pc_profile_data SET inventory = ?, armor = ?, ender_chest = ? WHERE profile_id = ?;";
+    private static final String SELECT_ITEM_ROWS_AFTER = "SELECT profile_id, inventory, armor, ender_chest FROM pc_profile_data " +
+            "WHERE profile_id > ? ORDER BY profile_id LIMIT ?;";
+
+    // Profiles whose stored items failed their checksum or could not be decoded. They are never saved over.
+    private static final String INSERT_QUARANTINE_MYSQL = "INSERT IGNORE INTO pc_quarantine (profile_id, reason, detected_at) VALUES (?, ?, ?);";
+    private static final String INSERT_QUARANTINE_SQLITE = "INSERT OR IGNORE INTO pc_quarantine (profile_id, reason, detected_at) VALUES (?, ?, ?);";
+    private static final String GET_QUARANTINE = "SELECT reason FROM pc_quarantine WHERE profile_id = ?;";
+    private static final String DELETE_QUARANTINE = "DELETE FROM pc_quarantine WHERE profile_id = ?;";
+
+    // Content-addressed item store. A deduplicated item column holds ITEM_REF_PREFIX followed by one hash per slot.
+    private static final String ITEM_REF_PREFIX = "ref:";
+    private static final String INSERT_ITEM_BLOB_MYSQL = "INSERT IGNORE INTO pc_item_blobs (hash, data) VALUES (?, ?);";
+    private static final String INSERT_ITEM_BLOB_SQLITE = "INSERT OR IGNORE INTO pc_item_blobs (hash, data) VALUES (?, ?);";
+    private static final String GET_ITEM_BLOB = "SELECT data FROM pc_item_blobs WHERE hash = ?;";
+    private static final String GET_ITEM_BLOB_HASHES = "SELECT hash FROM pc_item_blobs WHERE hash > ? ORDER BY hash LIMIT ?;";
+    private static final String GET_ITEM_REFERENCES = "SELECT profile_id, inventory, armor, ender_chest FROM pc_profile_data " +
+            "WHERE profile_id > ? AND (inventory LIKE '%ref:%' OR armor LIKE '%ref:%' OR ender_chest LIKE '%ref:%') " +
+            "ORDER BY profile_id LIMIT ?;";
+    private static final String GET_ARCHIVE_PAYLOADS = "SELECT profile_id, payload FROM pc_profile_archive " +
+            "WHERE profile_id > ? ORDER BY profile_id LIMIT ?;";
+    private static final String DELETE_ITEM_BLOB = "DELETE FROM pc_item_blobs WHERE hash = ?;";
+
+    // The pc_players UPSERT differs per dialect; the right one is picked once in connect()
+    private static final String UPSERT_ACTIVE_PROFILE_MYSQL = "INSERT INTO pc_players (player_uuid, active_profile_id) VALUES (?, ?) " +
+            "ON DUPLICATE KEY UPDATE active_profile_id = VALUES(active_profile_id);";
+    private static final String UPSERT_ACTIVE_PROFILE_SQLITE = "INSERT INTO pc_players (player_uuid, active_profile_id) VALUES (?, ?) " +
+            "ON CONFLICT(player_uuid) DO UPDATE SET active_profile_id = excluded.active_profile_id;";
+    private static final String GET_ACTIVE_PROFILE = "SELECT active_profile_id FROM pc_players WHERE player_uuid = ?;";
+
+    // World names are interned into pc_worlds so locations only store a small id
+    private static final String INSERT_WORLD_MYSQL = "INSERT IGNORE INTO pc_worlds (name) VALUES (?);";
+    private static final String INSERT_WORLD_SQLITE = "INSERT OR IGNORE INTO pc_worlds (name) VALUES (?);";
+    private static final String GET_WORLD_ID = "SELECT id FROM pc_worlds WHERE name = ?;";
+    private static final String GET_WORLDS = "SELECT id, name FROM pc_worlds;";
+    private static final String GET_PROFILE_IDS_IN_WORLD = "SELECT d.profile_id FROM pc_profile_data d " +
+            "JOIN pc_profiles p ON p.id = d.profile_id WHERE d.world_id = ? AND p.deleted_at IS NULL;";
 
     private static final String DELETE_CUSTOM_DATA = "DELETE FROM pc_custom_data WHERE profile_id = ?;";
     private static final String INSERT_CUSTOM_DATA = "INSERT INTO pc_custom_data (profile_id, namespace, data_key, data_value) VALUES (?, ?, ?, ?);";
-    private static final String GET_CUSTOM_DATA = "SELECT namespace, data_key, data_value FROM pc_custom_data WHERE profile_id = ?;";
+    private static final String DELETE_CUSTOM_DATA_NAMESPACE = "DELETE FROM pc_custom_data WHERE profile_id = ? AND namespace = ?;";
+    private static final String GET_CUSTOM_DATA_NAMESPACE = "SELECT data_key, data_value FROM pc_custom_data WHERE profile_id = ? AND namespace = ?;";
 
+    @SuppressWarnings("deprecation")
     public DatabaseManager(PlayerProfiles plugin) {
         this.plugin = plugin;
+        this.itemDataVersion = Bukkit.getUnsafe().getDataVersion();
     }
 
     /**
@@ -74,12 +189,28 @@ public class DatabaseManager {
 
             String jdbcUrl = "jdbc:mysql://" + host + ":" + port + "/" + dbName + "?useSSL=" + useSSL;
             connection = DriverManager.getConnection(jdbcUrl, user, pass);
+            upsertActiveProfileSql = UPSERT_ACTIVE_PROFILE_MYSQL;
+            insertItemBlobSql = INSERT_ITEM_BLOB_MYSQL;
+            insertWorldSql = INSERT_WORLD_MYSQL;
+            insertQuarantineSql = INSERT_QUARANTINE_MYSQL;
 
             // 3. Handle SQLite as the default
         } else {
-            File databaseFile = new File(plugin.getDataFolder(), "profiles.db");
-            String jdbcUrl = "jdbc:sqlite:" + databaseFile.getAbsolutePath();
+            String jdbcUrl = "jdbc:sqlite:" + getDatabaseFile().getAbsolutePath();
             connection = DriverManager.getConnection(jdbcUrl);
+            upsertActiveProfileSql = UPSERT_ACTIVE_PROFILE_SQLITE;
+            insertItemBlobSql = INSERT_ITEM_BLOB_SQLITE;
+            insertWorldSql = INSERT_WORLD_SQLITE;
+            insertQuarantineSql = INSERT_QUARANTINE_SQLITE;
+
+            // WAL lets readers (like the backup job) take a snapshot without blocking writers
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA journal_mode=WAL;");
+                // SQLite ignores ON DELETE CASCADE unless this is turned on for every connection
+                statement.execute("PRAGMA foreign_keys=ON;");
+                // Only applies to new databases; lets the sweeper hand free pages back with incremental_vacuum
+                statement.execute("PRAGMA auto_vacuum=INCREMENTAL;");
+            }
         }
 
         plugin.getLogger().info("Database connection established successfully.");
@@ -88,15 +219,31 @@ public class DatabaseManager {
         initializeTables();
     }
 
+    /**
+     * Gets the SQLite database file. Only meaningful when the database type is SQLITE.
+     * @return The profiles.db file in the plugin's data folder.
+     */
+    public File getDatabaseFile() {
+        return new File(plugin.getDataFolder(), "profiles.db");
+    }
+
     /**
      * Disconnects from the database.
      */
     public void disconnect() {
         if (connection != null) {
-            try {
-                connection.close();
-            } catch (SQLException e) {
-                plugin.getLogger().severe("Could not close database connection: " + e.getMessage());
+            synchronized (connectionLock) {
+                try {
+                    // Don't lose pointers that were queued but not flushed yet
+                    clearWrittenActiveProfiles(inTransaction(this::writePendingActiveProfiles));
+                } catch (SQLException e) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not write pending active profiles on shutdown", e);
+                }
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    plugin.getLogger().severe("Could not close database connection: " + e.getMessage());
+                }
             }
         }
     }
@@ -112,8 +259,12 @@ public class DatabaseManager {
                     "owner_uuid VARCHAR(36) NOT NULL," +
                     "profile_name VARCHAR(32) NOT NULL," +
                     "creation_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
-                    "last_used_date TIMESTAMP" +
+                    "last_used_date TIMESTAMP," +
+                    "deleted_at TIMESTAMP NULL," +
+                    "archived_at TIMESTAMP NULL" +
                     ");");
+            addColumnIfMissing(statement, "pc_profiles", "deleted_at", "TIMESTAMP NULL");
+            addColumnIfMissing(statement, "pc_profiles", "archived_at", "TIMESTAMP NULL");
 
             // pc_profile_data table
             statement.execute("CREATE TABLE IF NOT EXISTS pc_profile_data (" +
@@ -121,13 +272,39 @@ public class DatabaseManager {
                     "inventory TEXT," +
                     "armor TEXT," +
                     "location TEXT," +
+                    "world_id INTEGER NULL," +
+                    "loc_x DOUBLE NULL," +
+                    "loc_y DOUBLE NULL," +
+                    "loc_z DOUBLE NULL," +
+                    "loc_yaw FLOAT NULL," +
+                    "loc_pitch FLOAT NULL," +
                     "health DOUBLE," +
                     "food_level INTEGER," +
                     "experience TEXT," +
                     "gamemode VARCHAR(16)," +
                     "potion_effects TEXT," +
+                    "ender_chest TEXT," +
+                    "state_snapshot MEDIUMBLOB NULL," +
                     "FOREIGN KEY(profile_id) REFERENCES pc_profiles(id) ON DELETE CASCADE" +
                     ");");
+            addColumnIfMissing(statement, "pc_profile_data", "ender_chest", "TEXT");
+            addColumnIfMissing(statement, "pc_profile_data", "state_snapshot", "MEDIUMBLOB NULL");
+            // Rows written before these existed keep their JSON location until their next save
+            addColumnIfMissing(statement, "pc_profile_data", "world_id", "INTEGER NULL");
+            addColumnIfMissing(statement, "pc_profile_data", "loc_x", "DOUBLE NULL");
+            addColumnIfMissing(statement, "pc_profile_data", "loc_y", "DOUBLE NULL");
+            addColumnIfMissing(statement, "pc_profile_data", "loc_z", "DOUBLE NULL");
+            addColumnIfMissing(statement, "pc_profile_data", "loc_yaw", "FLOAT NULL");
+            addColumnIfMissing(statement, "pc_profile_data", "loc_pitch", "FLOAT NULL");
+            addIndexIfMissing(statement, "pc_profile_data", "idx_pc_profile_data_world", "world_id");
+
+            // pc_worlds table: world names interned to small ids for the location columns
+            boolean mysql = ConfigManager.getDatabaseType().equalsIgnoreCase("MYSQL");
+            statement.execute("CREATE TABLE IF NOT EXISTS pc_worlds (" +
+                    (mysql ? "id INT AUTO_INCREMENT PRIMARY KEY," : "id INTEGER PRIMARY KEY AUTOINCREMENT,") +
+                    "name VARCHAR(64) NOT NULL UNIQUE" +
+                    ");");
+            loadWorldIds();
 
             // pc_custom_data table
             statement.execute("CREATE TABLE IF NOT EXISTS pc_custom_data (" +
@@ -139,6 +316,28 @@ public class DatabaseManager {
                     "FOREIGN KEY(profile_id) REFERENCES pc_profiles(id) ON DELETE CASCADE" +
                     ");");
 
+            // pc_profile_archive table: cold profiles, with their data and custom data rows compressed into one payload
+            statement.execute("CREATE TABLE IF NOT EXISTS pc_profile_archive (" +
+                    "profile_id VARCHAR(36) PRIMARY KEY," +
+                    "payload LONGBLOB NOT NULL," +
+                    "archived_at TIMESTAMP NULL," +
+                    "FOREIGN KEY(profile_id) REFERENCES pc_profiles(id) ON DELETE CASCADE" +
+                    ");");
+
+            // pc_item_blobs table: each distinct serialized ItemStack, stored once and referenced by hash
+            statement.execute("CREATE TABLE IF NOT EXISTS pc_item_blobs (" +
+                    "hash CHAR(32) PRIMARY KEY," +
+                    "data MEDIUMTEXT NOT NULL" +
+                    ");");
+
+            // pc_quarantine table: profiles with corrupt stored items, kept out of saves until an admin releases them
+            statement.execute("CREATE TABLE IF NOT EXISTS pc_quarantine (" +
+                    "profile_id VARCHAR(36) PRIMARY KEY," +
+                    "reason TEXT," +
+                    "detected_at TIMESTAMP NULL," +
+                    "FOREIGN KEY(profile_id) REFERENCES pc_profiles(id) ON DELETE CASCADE" +
+                    ");");
+
             statement.execute("CREATE TABLE IF NOT EXISTS pc_players (" +
                     "player_uuid VARCHAR(36) PRIMARY KEY," +
                     "active_profile_id VARCHAR(36)" +
@@ -148,6 +347,158 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Adds a column to an existing table. Used to upgrade databases created by older versions.
+     */
+    private void addColumnIfMissing(Statement statement, String table, String column, String definition) throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getColumns(connection.getCatalog(), null, table, column)) {
+            if (rs.next()) {
+                return;
+            }
+        }
+        statement.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition + ";");
+        plugin.getLogger().info("Added column " + column + " to " + table + ".");
+    }
+
+    /**
+     * Adds an index to an existing table if no index with that name exists yet.
+     */
+    private void addIndexIfMissing(Statement statement, String table, String index, String column) throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getIndexInfo(connection.getCatalog(), null, table, false, false)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return;
+                }
+            }
+        }
+        statement.execute("CREATE INDEX " + index + " ON " + table + " (" + column + ");");
+    }
+
+    /**
+     * Fills the world id caches from pc_worlds.
+     */
+    private void loadWorldIds() throws SQLException {
+        synchronized (connectionLock) {
+            try (PreparedStatement ps = connection.prepareStatement(GET_WORLDS);
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    worldIds.put(rs.getString(2), rs.getInt(1));
+                    worldNames.put(rs.getInt(1), rs.getString(2));
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the interned id of a world name, assigning a new one if the world was never seen before.
+     * MUST NOT be run on the main server thread.
+     */
+    private int getOrCreateWorldId(String worldName) throws SQLException {
+        Integer cached = worldIds.get(worldName);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Insert-or-ignore, then read back, so another server sharing the database can't cause a duplicate
+        synchronized (connectionLock) {
+            try (PreparedStatement ps = connection.prepareStatement(insertWorldSql)) {
+                ps.setString(1, worldName);
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = connection.prepareStatement(GET_WORLD_ID)) {
+                ps.setString(1, worldName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new SQLException("World " + worldName + " is missing from pc_worlds after insert");
+                    }
+                    int id = rs.getInt(1);
+                    worldIds.put(worldName, id);
+                    worldNames.put(id, worldName);
+                    return id;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the world name for an interned id, reloading pc_worlds if another server added it.
+     * @return The world name, or null if the id is unknown.
+     */
+    private String getWorldName(int worldId) throws SQLException {
+        String name = worldNames.get(worldId);
+        if (name == null) {
+            loadWorldIds();
+            name = worldNames.get(worldId);
+        }
+        return name;
+    }
+
+    /**
+     * Asynchronously finds the profiles whose saved location is in a world.
+     * Archived profiles are not included, since their data rows live in the archive.
+     * @param worldName The world name.
+     * @return A CompletableFuture that will complete with the profile IDs.
+     */
+    public CompletableFuture<List<UUID>> getProfileIdsInWorld(String worldName) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<UUID> profileIds = new ArrayList<>();
+            Integer worldId = worldIds.get(worldName);
+            if (worldId == null) {
+                return profileIds; // Nothing was ever saved in this world
+            }
+            synchronized (connectionLock) {
+                try (PreparedStatement ps = connection.prepareStatement(GET_PROFILE_IDS_IN_WORLD)) {
+                    ps.setInt(1, worldId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            profileIds.add(UUID.fromString(rs.getString(1)));
+                        }
+                    }
+                } catch (SQLException e) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not look up profiles in world " + worldName, e);
+                }
+            }
+            return profileIds;
+        }, runnable -> plugin.getTaskScheduler().runAsync(runnable));
+    }
+
+    /**
+     * Registers a plugin's custom data namespace to be loaded together with every profile, instead of
+     * on first access. Plugins that read their data on the main thread should call this in onEnable.
+     * @param owner The plugin whose namespace to prefetch.
+     */
+    public void prefetchCustomData(Plugin owner) {
+        prefetchedNamespaces.add(owner.getName());
+    }
+
+    /**
+     * Lazy loader handed to {@link ProfileImpl}. Errors are logged and give null, which leaves the namespace unloaded.
+     */
+    private Map<String, String> loadCustomDataNamespace(UUID profileId, String namespace) {
+        try {
+            return readCustomDataNamespace(profileId, namespace);
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not load custom data " + namespace + " for profile " + profileId, e);
+            return null;
+        }
+    }
+
+    private Map<String, String> readCustomDataNamespace(UUID profileId, String namespace) throws SQLException {
+        Map<String, String> rows = new HashMap<>();
+        synchronized (connectionLock) {
+            try (PreparedStatement ps = connection.prepareStatement(GET_CUSTOM_DATA_NAMESPACE)) {
+                ps.setString(1, profileId.toString());
+                ps.setString(2, namespace);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        rows.put(rs.getString(1), rs.getString(2));
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
     /**
      * Asynchronously creates a new, empty character profile for a player.
      * @param owner The player creating the profile.
@@ -155,28 +506,34 @@ public class DatabaseManager {
      * @return A CompletableFuture that will complete with the new CharacterProfile, or null if it failed.
      */
     public CompletableFuture<Profile> createProfile(Player owner, String profileName) {
+        PlayerSession session = plugin.getIdentityManager().getSession(owner);
+        if (session == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        UUID ownerUuid = session.getOriginalUUID();
+
         return CompletableFuture.supplyAsync(() -> {
             UUID profileId = UUID.randomUUID();
             Timestamp now = new Timestamp(System.currentTimeMillis());
-            UUID ownerUuid = plugin.getIdentityManager().getOriginalIdentity(owner).uuid();
-
-            // The original blocking code is now safely inside the async task
-            try (PreparedStatement ps = connection.prepareStatement(CREATE_PROFILE)) {
-                ps.setString(1, profileId.toString());
-                ps.setString(2, ownerUuid.toString());
-                ps.setString(3, profileName);
-                ps.setTimestamp(4, now);
-                ps.executeUpdate();
-            } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, "Could not create new profile in pc_profiles", e);
-                return null;
-            }
 
-            try (PreparedStatement ps = connection.prepareStatement(CREATE_PROFILE_DATA)) {
-                ps.setString(1, profileId.toString());
-                ps.executeUpdate();
+            // Both rows in one transaction, so a failure can't leave a profile without its data row
+            try {
+                inTransaction(() -> {
+                    try (PreparedStatement ps = connection.prepareStatement(CREATE_PROFILE)) {
+                        ps.setString(1, profileId.toString());
+                        ps.setString(2, ownerUuid.toString());
+                        ps.setString(3, profileName);
+                        ps.setTimestamp(4, now);
+                        ps.executeUpdate();
+                    }
+                    try (PreparedStatement ps = connection.prepareStatement(CREATE_PROFILE_DATA)) {
+                        ps.setString(1, profileId.toString());
+                        ps.executeUpdate();
+                    }
+                    return null;
+                });
             } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, "Could not create new profile data in pc_profile_data", e);
+                plugin.getLogger().log(Level.SEVERE, "Could not create new profile " + profileId, e);
                 return null;
             }
 
@@ -184,7 +541,7 @@ public class DatabaseManager {
             profile.setLastUsedDate(now);
             // We should also save the player's current state to this new profile by default
             return profile;
-        }, runnable -> Bukkit.getScheduler().runTaskAsynchronously(plugin, runnable));
+        }, runnable -> plugin.getTaskScheduler().runAsync(runnable));
     }
 
     /**
@@ -194,91 +551,124 @@ public class DatabaseManager {
      */
     public CompletableFuture<Void> saveProfile(Profile profile) {
         return CompletableFuture.runAsync(() -> {
-            if (!(profile instanceof ProfileImpl p)) return;
+            // Any active profile pointer queued alongside this save still goes out when the save itself doesn't
+            if (!(profile instanceof ProfileImpl p)) {
+                flushActiveProfiles();
+                return;
+            }
+            // Saving would replace the stored items with whatever could be decoded from them
+            if (p.isQuarantined()) {
+                plugin.getLogger().warning("Not saving quarantined profile " + p.getProfileId());
+                flushActiveProfiles();
+                return;
+            }
 
             try {
-                // Save to pc_profiles
-                try (PreparedStatement ps = connection.prepareStatement(UPDATE_PROFILE)) {
-                    ps.setString(1, p.getProfileName());
-                    ps.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
-                    ps.setString(3, p.getProfileId().toString());
-                    ps.executeUpdate();
-                }
-
-                // Save to pc_profile_data
-                try (PreparedStatement ps = connection.prepareStatement(UPDATE_PROFILE_DATA)) {
-                    ItemStack[] inventoryContents = p.getInventoryContents();
-                    String inventoryData = Base64ItemSerializer.serialize(inventoryContents);
-                    ps.setString(1, inventoryData);
+                List<Map.Entry<UUID, String>> writtenPointers = inTransaction(() -> {
+                    // Save to pc_profiles
+                    try (PreparedStatement ps = connection.prepareStatement(UPDATE_PROFILE)) {
+                        ps.setString(1, p.getProfileName());
+                        ps.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+                        ps.setString(3, p.getProfileId().toString());
+                        ps.executeUpdate();
+                    }
 
-                    String armorData = Base64ItemSerializer.serialize(p.getArmorContents());
-                    ps.setString(2, armorData);
+                    // Save to pc_profile_data
+                    try (PreparedStatement ps = connection.prepareStatement(UPDATE_PROFILE_DATA)) {
+                        // Untouched payloads are written back as-is, without decoding and re-encoding them
+                        String inventoryData = p.getInventoryPayload() != null ? p.getInventoryPayload() : writeItems(p.getInventoryContents());
+                        ps.setString(1, inventoryData);
 
-                    Location location = p.getLocation();
+                        String armorData = p.getArmorPayload() != null ? p.getArmorPayload() : writeItems(p.getArmorContents());
+                        ps.setString(2, armorData);
 
-                    String locationJson = null;
-                    try {
-                        if (location != null) {
-                            // Create a simple map with just the essential location data
-                            Map<String, Object> locationMap = new HashMap<>();
-                            locationMap.put("world", location.getWorld() != null ? location.getWorld().getName() : null);
-                            locationMap.put("x", location.getX());
-                            locationMap.put("y", location.getY());
-                            locationMap.put("z", location.getZ());
-                            locationMap.put("yaw", location.getYaw());
-                            locationMap.put("pitch", location.getPitch());
-                            locationJson = gson.toJson(locationMap);
+                        Location location = p.getLocation();
+                        if (location != null && location.getWorld() != null) {
+                            ps.setInt(3, getOrCreateWorldId(location.getWorld().getName()));
+                            ps.setDouble(4, location.getX());
+                            ps.setDouble(5, location.getY());
+                            ps.setDouble(6, location.getZ());
+                            ps.setFloat(7, location.getYaw());
+                            ps.setFloat(8, location.getPitch());
                         } else {
-                            locationJson = "null";
+                            ps.setNull(3, Types.INTEGER);
+                            ps.setNull(4, Types.DOUBLE);
+                            ps.setNull(5, Types.DOUBLE);
+                            ps.setNull(6, Types.DOUBLE);
+                            ps.setNull(7, Types.FLOAT);
+                            ps.setNull(8, Types.FLOAT);
                         }
-                    } catch (Exception e) {
-                        locationJson = "null";
-                    }
-                    ps.setString(3, locationJson);
 
-                    ps.setDouble(4, p.getHealth());
+                        ps.setDouble(9, p.getHealth());
 
-                    ps.setInt(5, p.getFoodLevel());
+                        ps.setInt(10, p.getFoodLevel());
 
-                    ps.setInt(6, p.getTotalExperience());
+                        ps.setInt(11, p.getTotalExperience());
 
-                    String gamemode = p.getGameMode() != null ? p.getGameMode().name() : GameMode.SURVIVAL.name();
-                    ps.setString(7, gamemode);
+                        String gamemode = p.getGameMode() != null ? p.getGameMode().name() : GameMode.SURVIVAL.name();
+                        ps.setString(12, gamemode);
 
-                    String potionsJson = p.getPotionEffects() != null ? gson.toJson(p.getPotionEffects(), potionEffectCollectionType) : "[]";
-                    ps.setString(8, potionsJson);
+                        String potionsData = PotionEffectCodec.encode(p.getPotionEffects() != null ? p.getPotionEffects() : List.of());
+                        ps.setString(13, potionsData);
 
-                    ps.setString(9, p.getProfileId().toString());
-                    int rowsAffected = ps.executeUpdate();
-                }
+                        String enderChestData = p.getEnderChestPayload() != null ? p.getEnderChestPayload() : writeItems(p.getEnderChestContents());
+                        ps.setString(14, enderChestData);
 
-                // Here you would also save the custom data from the API to pc_custom_data
-                // (This involves iterating the custom data map and running INSERT/UPDATE)
+                        ps.setBytes(15, p.getStateSnapshot());
 
-                try (PreparedStatement ps = connection.prepareStatement(DELETE_CUSTOM_DATA)) {
-                    ps.setString(1, p.getProfileId().toString());
-                    ps.executeUpdate();
-                }
+                        ps.setString(16, p.getProfileId().toString());
+                        int rowsAffected = ps.executeUpdate();
+                        // The profile was archived while loaded elsewhere; bring its rows back and write over them
+                        if (rowsAffected == 0 && restoreArchivedRows(p.getProfileId().toString())) {
+                            ps.executeUpdate();
+                        }
+                    }
 
-                // Next, insert all the current custom data.
-                try (PreparedStatement ps = connection.prepareStatement(INSERT_CUSTOM_DATA)) {
-                    for (Map.Entry<String, Map<String, Object>> pluginEntry : p.getCustomDataMap().entrySet()) {
-                        String namespace = pluginEntry.getKey();
-                        for (Map.Entry<String, Object> dataEntry : pluginEntry.getValue().entrySet()) {
+                    // Custom data is rewritten per namespace. Namespaces that were never loaded are left untouched.
+                    // Both passes use one copy, so a namespace loaded in between is never inserted without its delete.
+                    Set<String> loaded = p.getLoadedCustomDataNamespaces();
+                    Set<String> namespaces = Set.copyOf(loaded != null ? loaded : p.getCustomDataMap().keySet());
+                    if (loaded == null) {
+                        try (PreparedStatement ps = connection.prepareStatement(DELETE_CUSTOM_DATA)) {
                             ps.setString(1, p.getProfileId().toString());
-                            ps.setString(2, namespace);
-                            ps.setString(3, dataEntry.getKey());
-                            ps.setString(4, gson.toJson(dataEntry.getValue())); // Serialize the value to JSON
-                            ps.addBatch();
+                            ps.executeUpdate();
+                        }
+                    } else {
+                        try (PreparedStatement ps = connection.prepareStatement(DELETE_CUSTOM_DATA_NAMESPACE)) {
+                            for (String namespace : namespaces) {
+                                ps.setString(1, p.getProfileId().toString());
+                                ps.setString(2, namespace);
+                                ps.addBatch();
+                            }
+                            ps.executeBatch();
                         }
                     }
-                    ps.executeBatch(); // Execute all inserts at once for efficiency
-                }
+
+                    // Next, insert all the current custom data.
+                    try (PreparedStatement ps = connection.prepareStatement(INSERT_CUSTOM_DATA)) {
+                        for (String namespace : namespaces) {
+                            Map<String, Object> pluginData = p.getCustomDataMap().get(namespace);
+                            if (pluginData == null) continue;
+                            for (Map.Entry<String, Object> dataEntry : pluginData.entrySet()) {
+                                ps.setString(1, p.getProfileId().toString());
+                                ps.setString(2, namespace);
+                                ps.setString(3, dataEntry.getKey());
+                                ps.setString(4, ProfileImpl.encodeCustomData(dataEntry.getValue()));
+                                ps.addBatch();
+                            }
+                        }
+                        ps.executeBatch(); // Execute all inserts at once for efficiency
+                    }
+
+                    // Any active profile pointer queued alongside this save is written in the same transaction
+                    return writePendingActiveProfiles();
+                });
+                clearWrittenActiveProfiles(writtenPointers);
 
             } catch (SQLException e) {
                 plugin.getLogger().log(Level.SEVERE, "Failed to save profile " + p.getProfileId(), e);
             }
-        }, runnable -> Bukkit.getScheduler().runTaskAsynchronously(plugin, runnable));
+        }, runnable -> plugin.getTaskScheduler().runAsync(runnable));
     }
 
 
@@ -290,98 +680,140 @@ public class DatabaseManager {
     public CompletableFuture<Optional<Profile>> loadProfile(UUID profileId) {
         return CompletableFuture.supplyAsync(() -> {
             ProfileImpl profile = null;
+            boolean archived = false;
 
-            try (PreparedStatement ps = connection.prepareStatement(GET_PROFILE_BY_ID)) {
-                ps.setString(1, profileId.toString());
-                ResultSet rs = ps.executeQuery();
-                if (rs.next()) {
-                    UUID ownerId = UUID.fromString(rs.getString("owner_uuid"));
-                    String name = rs.getString("profile_name");
-                    profile = new ProfileImpl(profileId, ownerId, name);
-                    profile.setCreationDate(rs.getTimestamp("creation_date"));
-                    profile.setLastUsedDate(rs.getTimestamp("last_used_date"));
+            synchronized (connectionLock) {
+                try (PreparedStatement ps = connection.prepareStatement(GET_PROFILE_BY_ID)) {
+                    ps.setString(1, profileId.toString());
+                    ResultSet rs = ps.executeQuery();
+                    if (rs.next()) {
+                        UUID ownerId = UUID.fromString(rs.getString("owner_uuid"));
+                        String name = rs.getString("profile_name");
+                        profile = new ProfileImpl(profileId, ownerId, name);
+                        profile.setCreationDate(rs.getTimestamp("creation_date"));
+                        profile.setLastUsedDate(rs.getTimestamp("last_used_date"));
+                        archived = rs.getTimestamp("archived_at") != null;
+                    }
+                } catch (SQLException e) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not load profile " + profileId, e);
+                    return Optional.empty();
                 }
-            } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, "Could not load profile " + profileId, e);
-                return Optional.empty();
-            }
 
-            if (profile == null) {
-                return Optional.empty();
-            }
+                if (profile == null) {
+                    return Optional.empty();
+                }
 
-            try (PreparedStatement ps = connection.prepareStatement(GET_PROFILE_DATA_BY_ID)) {
-                ps.setString(1, profileId.toString());
-                ResultSet rs = ps.executeQuery();
-                if (rs.next()) {
-                    profile.setInventoryContents(Base64ItemSerializer.deserialize(rs.getString("inventory")));
-                    profile.setArmorContents(Base64ItemSerializer.deserialize(rs.getString("armor")));
-                    String locationJson = rs.getString("location");
-                    if (locationJson != null && !locationJson.equals("null")) {
-                        try {
-                            @SuppressWarnings("unchecked")
-                            Map<String, Object> locationMap = gson.fromJson(locationJson, Map.class);
-                            String worldName = (String) locationMap.get("world");
-                            if (worldName != null) {
-                                World world = Bukkit.getWorld(worldName);
-                                if (world != null) {
-                                    double x = ((Number) locationMap.get("x")).doubleValue();
-                                    double y = ((Number) locationMap.get("y")).doubleValue();
-                                    double z = ((Number) locationMap.get("z")).doubleValue();
-                                    float yaw = ((Number) locationMap.get("yaw")).floatValue();
-                                    float pitch = ((Number) locationMap.get("pitch")).floatValue();
-                                    Location location = new Location(world, x, y, z, yaw, pitch);
-                                    profile.setLocation(location);
-                                } else {
-                                    plugin.getLogger().warning("World '" + worldName + "' not found when loading profile location");
+                // Cold profiles live in the archive until they are used again
+                if (archived) {
+                    rehydrateProfile(profileId);
+                }
+
+                try (PreparedStatement ps = connection.prepareStatement(GET_PROFILE_DATA_BY_ID)) {
+                    ps.setString(1, profileId.toString());
+                    ResultSet rs = ps.executeQuery();
+                    if (rs.next()) {
+                        // Items are decoded lazily, on first access
+                        ProfileImpl loaded = profile;
+                        profile.setItemPayloads(rs.getString("inventory"), rs.getString("armor"), rs.getString("ender_chest"),
+                                payload -> decodeItems(loaded, payload), this::isCurrentItemFormat);
+                        int worldId = rs.getInt("world_id");
+                        boolean hasWorldId = !rs.wasNull();
+                        String locationJson = rs.getString("location");
+                        if (hasWorldId) {
+                            String worldName = getWorldName(worldId);
+                            World world = worldName != null ? Bukkit.getWorld(worldName) : null;
+                            if (world != null) {
+                                profile.setLocation(new Location(world, rs.getDouble("loc_x"), rs.getDouble("loc_y"),
+                                        rs.getDouble("loc_z"), rs.getFloat("loc_yaw"), rs.getFloat("loc_pitch")));
+                            } else {
+                                plugin.getLogger().warning("World '" + (worldName != null ? worldName : "#" + worldId) + "' not found when loading profile location");
+                            }
+                        } else if (locationJson != null && !locationJson.equals("null")) {
+                            // Legacy JSON location, written before the numeric columns existed
+                            try {
+                                @SuppressWarnings("unchecked")
+                                Map<String, Object> locationMap = gson.fromJson(locationJson, Map.class);
+                                String worldName = (String) locationMap.get("world");
+                                if (worldName != null) {
+                                    World world = Bukkit.getWorld(worldName);
+                                    if (world != null) {
+                                        double x = ((Number) locationMap.get("x")).doubleValue();
+                                        double y = ((Number) locationMap.get("y")).doubleValue();
+                                        double z = ((Number) locationMap.get("z")).doubleValue();
+                                        float yaw = ((Number) locationMap.get("yaw")).floatValue();
+                                        float pitch = ((Number) locationMap.get("pitch")).floatValue();
+                                        Location location = new Location(world, x, y, z, yaw, pitch);
+                                        profile.setLocation(location);
+                                    } else {
+                                        plugin.getLogger().warning("World '" + worldName + "' not found when loading profile location");
+                                    }
                                 }
+                            } catch (Exception e) {
+                                plugin.getLogger().log(Level.WARNING, "Failed to deserialize location for profile " + profileId, e);
                             }
-                        } catch (Exception e) {
-                            plugin.getLogger().log(Level.WARNING, "Failed to deserialize location for profile " + profileId, e);
                         }
-                    }
-                    profile.setHealth(rs.getDouble("health"));
-                    profile.setFoodLevel(rs.getInt("food_level"));
-                    profile.setTotalExperience(rs.getInt("experience"));
-                    String gamemodeName = rs.getString("gamemode");
-                    if (gamemodeName != null) {
-                        profile.setGameMode(GameMode.valueOf(gamemodeName));
-                    }
+                        profile.setStateSnapshot(rs.getBytes("state_snapshot"));
+                        profile.setHealth(rs.getDouble("health"));
+                        profile.setFoodLevel(rs.getInt("food_level"));
+                        profile.setTotalExperience(rs.getInt("experience"));
+                        String gamemodeName = rs.getString("gamemode");
+                        if (gamemodeName != null) {
+                            profile.setGameMode(GameMode.valueOf(gamemodeName));
+                        }
 
-                    String potionsJson = rs.getString("potion_effects");
-                    if (potionsJson != null) {
-                        profile.setPotionEffects(gson.fromJson(potionsJson, potionEffectCollectionType));
+                        String potionsData = rs.getString("potion_effects");
+                        if (potionsData != null && potionsData.startsWith(PotionEffectCodec.PREFIX)) {
+                            try {
+                                profile.setPotionEffects(PotionEffectCodec.decode(potionsData));
+                            } catch (IOException e) {
+                                plugin.getLogger().log(Level.WARNING, "Failed to decode potion effects for profile " + profileId, e);
+                            }
+                        } else if (potionsData != null) {
+                            // Legacy Gson JSON, rewritten in the binary format on the next save
+                            profile.setPotionEffects(gson.fromJson(potionsData, potionEffectCollectionType));
+                        }
                     }
+                } catch (SQLException | NullPointerException e) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not load profile data for " + profileId, e);
+                    // If data is corrupt or missing, we can't safely load the profile.
+                    return Optional.empty();
                 }
-            } catch (SQLException | NullPointerException e) {
-                plugin.getLogger().log(Level.SEVERE, "Could not load profile data for " + profileId, e);
-                // If data is corrupt or missing, we can't safely load the profile.
-                return Optional.empty();
-            }
-
-            try (PreparedStatement ps = connection.prepareStatement(GET_CUSTOM_DATA)) {
-                ps.setString(1, profileId.toString());
-                ResultSet rs = ps.executeQuery();
-                while (rs.next()) {
-                    String namespace = rs.getString("namespace");
-                    String dataKey = rs.getString("data_key");
-                    String dataValueJson = rs.getString("data_value");
 
-                    // Deserialize the JSON back into a generic Object
-                    Object dataValue = gson.fromJson(dataValueJson, Object.class);
+                try (PreparedStatement ps = connection.prepareStatement(GET_QUARANTINE)) {
+                    ps.setString(1, profileId.toString());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) {
+                            plugin.getLogger().warning("Profile " + profileId + " is quarantined: " + rs.getString("reason"));
+                            profile.setQuarantined(true);
+                        }
+                    }
+                } catch (SQLException e) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not check quarantine for profile " + profileId, e);
+                    return Optional.empty();
+                }
 
-                    // Add the loaded data directly to the profile's map
-                    profile.getCustomDataMap()
-                            .computeIfAbsent(namespace, k -> new ConcurrentHashMap<>())
-                            .put(dataKey, dataValue);
+                // Only prefetched namespaces are read now; the rest are read when a plugin first touches them
+                List<String> preloaded = new ArrayList<>();
+                try {
+                    for (String namespace : prefetchedNamespaces) {
+                        Map<String, String> rows = readCustomDataNamespace(profileId, namespace);
+                        if (!rows.isEmpty()) {
+                            // Kept encoded; the first typed or untyped read decodes it with the type the caller asks for
+                            Map<String, Object> pluginData = profile.getCustomDataMap().computeIfAbsent(namespace, k -> new ConcurrentHashMap<>());
+                            rows.forEach((key, value) -> pluginData.put(key, new CustomDataValue.Encoded(value)));
+                        }
+                        preloaded.add(namespace);
+                    }
+                } catch (SQLException e) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not load custom data for profile " + profileId, e);
+                    return Optional.empty();
                 }
-            } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, "Could not load custom data for profile " + profileId, e);
-                return Optional.empty();
+                profile.setCustomDataLoader(namespace -> loadCustomDataNamespace(profileId, namespace), preloaded,
+                        runnable -> plugin.getTaskScheduler().runAsync(runnable));
             }
 
             return Optional.of(profile);
-        }, runnable -> Bukkit.getScheduler().runTaskAsynchronously(plugin, runnable));
+        }, runnable -> plugin.getTaskScheduler().runAsync(runnable));
 
 
     }
@@ -397,87 +829,1063 @@ public class DatabaseManager {
         return CompletableFuture.supplyAsync(() -> {
             Collection<Profile> profiles = new ArrayList<>();
             // The original blocking code is now safely inside the async task
-            try (PreparedStatement ps = connection.prepareStatement(GET_PROFILES_BY_OWNER)) {
-                ps.setString(1, ownerUuid.toString());
-                ResultSet rs = ps.executeQuery();
-                while (rs.next()) {
-                    UUID profileId = UUID.fromString(rs.getString("id"));
-                    String name = rs.getString("profile_name");
-                    ProfileImpl profile = new ProfileImpl(profileId, ownerUuid, name);
-                    profile.setLastUsedDate(rs.getTimestamp("last_used_date"));
-                    profiles.add(profile);
+            synchronized (connectionLock) {
+                try (PreparedStatement ps = connection.prepareStatement(GET_PROFILES_BY_OWNER)) {
+                    ps.setString(1, ownerUuid.toString());
+                    ResultSet rs = ps.executeQuery();
+                    while (rs.next()) {
+                        UUID profileId = UUID.fromString(rs.getString("id"));
+                        String name = rs.getString("profile_name");
+                        ProfileImpl profile = new ProfileImpl(profileId, ownerUuid, name);
+                        profile.setLastUsedDate(rs.getTimestamp("last_used_date"));
+                        profiles.add(profile);
+                    }
+                } catch (SQLException e) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not load profiles for player " + ownerUuid, e);
                 }
-            } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, "Could not load profiles for player " + ownerUuid, e);
             }
             return profiles;
-        }, runnable -> Bukkit.getScheduler().runTaskAsynchronously(plugin, runnable)); // Use Bukkit's async scheduler
+        }, runnable -> plugin.getTaskScheduler().runAsync(runnable)); // Use Bukkit's async scheduler
     }
 
     public CompletableFuture<Collection<Profile>> getProfilesForPlayer(Player player) {
-        return getProfilesForPlayer(plugin.getIdentityManager().getOriginalIdentity(player).uuid());
+        PlayerSession session = plugin.getIdentityManager().getSession(player);
+        if (session == null) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        return getProfilesForPlayer(session.getOriginalUUID());
     }
 
 
     /**
-     * Deletes a character profile and all associated data from the database.
+     * Asynchronously deletes a character profile by marking it with a tombstone.
+     * The profile disappears from all lookups right away; its rows are purged later by the {@link ProfileSweeper}.
      * @param profileId The UUID of the profile to delete.
+     * @return A CompletableFuture that completes with true if the profile was found and deleted.
      */
-    public void deleteProfile(UUID profileId) {
-        try (PreparedStatement ps = connection.prepareStatement(DELETE_PROFILE)) {
-            ps.setString(1, profileId.toString());
-            ps.executeUpdate();
+    public CompletableFuture<Boolean> deleteProfile(UUID profileId) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return inTransaction(() -> {
+                    int updated;
+                    try (PreparedStatement ps = connection.prepareStatement(TOMBSTONE_PROFILE)) {
+                        ps.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+                        ps.setString(2, profileId.toString());
+                        updated = ps.executeUpdate();
+                    }
+                    try (PreparedStatement ps = connection.prepareStatement(CLEAR_ACTIVE_PROFILE_POINTERS)) {
+                        ps.setString(1, profileId.toString());
+                        ps.executeUpdate();
+                    }
+                    return updated > 0;
+                });
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not delete profile " + profileId, e);
+                return false;
+            }
+        }, runnable -> plugin.getTaskScheduler().runAsync(runnable));
+    }
+
+    /**
+     * Purges tombstoned profiles and orphaned rows in small transactions, then clears active profile
+     * pointers that no longer lead anywhere. MUST NOT be run on the main server thread.
+     * @param batchSize The maximum number of profiles handled per transaction.
+     * @param tombstoneGraceMillis How long a tombstoned profile is kept before it is purged.
+     * @return The number of rows cleaned up in each category.
+     */
+    public SweepResult sweep(int batchSize, long tombstoneGraceMillis) throws SQLException {
+        Timestamp cutoff = new Timestamp(System.currentTimeMillis() - tombstoneGraceMillis);
+
+        int purgedProfiles = 0;
+        List<String> ids;
+        while (!(ids = selectIds(SELECT_TOMBSTONED_PROFILES, cutoff, batchSize)).isEmpty()) {
+            List<String> batch = ids;
+            inTransaction(() -> {
+                // Children first, so this also works where foreign keys are not enforced
+                deleteByProfileId(DELETE_CUSTOM_DATA, batch);
+                deleteByProfileId(DELETE_PROFILE_DATA, batch);
+                deleteByProfileId(DELETE_ARCHIVE, batch);
+                deleteByProfileId(DELETE_PROFILE, batch);
+                return null;
+            });
+            purgedProfiles += batch.size();
+            if (batch.size() < batchSize) break;
+        }
+
+        int orphanedData = 0;
+        while (!(ids = selectIds(SELECT_ORPHANED_PROFILE_DATA, null, batchSize)).isEmpty()) {
+            List<String> batch = ids;
+            orphanedData += inTransaction(() -> deleteByProfileId(DELETE_PROFILE_DATA, batch));
+            if (batch.size() < batchSize) break;
+        }
+
+        int orphanedCustomData = 0;
+        while (!(ids = selectIds(SELECT_ORPHANED_CUSTOM_DATA, null, batchSize)).isEmpty()) {
+            List<String> batch = ids;
+            orphanedCustomData += inTransaction(() -> deleteByProfileId(DELETE_CUSTOM_DATA, batch));
+            if (batch.size() < batchSize) break;
+        }
+
+        int clearedPointers;
+        synchronized (connectionLock) {
+            try (PreparedStatement ps = connection.prepareStatement(CLEAR_DANGLING_ACTIVE_PROFILES)) {
+                clearedPointers = ps.executeUpdate();
+            }
+        }
+
+        return new SweepResult(purgedProfiles, orphanedData, orphanedCustomData, clearedPointers);
+    }
+
+    /**
+     * Moves profiles that have not been used since the cutoff into the compressed archive table.
+     * Each profile is archived in its own transaction. MUST NOT be run on the main server thread.
+     * @param olderThanMillis Profiles last used longer ago than this are archived.
+     * @param batchSize The maximum number of profiles archived in this call.
+     * @param inUse Profiles matching this are skipped, e.g. ones currently loaded by an online player.
+     * @return The number of profiles archived.
+     */
+    public int archiveColdProfiles(long olderThanMillis, int batchSize, Predicate<UUID> inUse) throws SQLException {
+        Timestamp cutoff = new Timestamp(System.currentTimeMillis() - olderThanMillis);
+        int archived = 0;
+
+        for (String profileId : selectIds(SELECT_COLD_PROFILES, cutoff, batchSize)) {
+            if (inUse.test(UUID.fromString(profileId))) {
+                continue;
+            }
+
+            long start = System.nanoTime();
+            if (inTransaction(() -> archiveRows(profileId))) {
+                archivedCount.incrementAndGet();
+                archiveNanos.addAndGet(System.nanoTime() - start);
+                archived++;
+            }
+        }
+        return archived;
+    }
+
+    /**
+     * Moves an archived profile's rows back into the live tables. Called on the loading thread.
+     * @param profileId The profile to rehydrate.
+     * @return true if the profile was found in the archive and restored.
+     */
+    public boolean rehydrateProfile(UUID profileId) {
+        long start = System.nanoTime();
+        try {
+            boolean restored = inTransaction(() -> restoreArchivedRows(profileId.toString()));
+            if (restored) {
+                rehydratedCount.incrementAndGet();
+                rehydrateNanos.addAndGet(System.nanoTime() - start);
+            }
+            return restored;
         } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "Could not delete profile " + profileId, e);
+            plugin.getLogger().log(Level.SEVERE, "Could not rehydrate archived profile " + profileId, e);
+            return false;
         }
     }
 
     /**
-     * Asynchronously gets the UUID of the last active profile for a given player.
-     * @param playerUuid The player's UUID.
-     * @return A CompletableFuture that will complete with an Optional containing the profile UUID.
+     * Packs the profile's data and custom data rows into the archive and removes them from the live tables.
+     * Must be called inside {@link #inTransaction(SqlWork)}.
      */
-    public CompletableFuture<Optional<UUID>> getPlayerActiveProfileId(UUID playerUuid) {
-        return CompletableFuture.supplyAsync(() -> {
-            try (PreparedStatement ps = connection.prepareStatement("SELECT active_profile_id FROM pc_players WHERE player_uuid = ?;")) {
-                ps.setString(1, playerUuid.toString());
-                ResultSet rs = ps.executeQuery();
-                if (rs.next()) {
-                    String profileId = rs.getString("active_profile_id");
-                    return profileId != null ? Optional.of(UUID.fromString(profileId)) : Optional.empty();
+    private boolean archiveRows(String profileId) throws SQLException {
+        Map<String, Object> columns = new LinkedHashMap<>();
+        try (PreparedStatement ps = connection.prepareStatement(GET_PROFILE_DATA_BY_ID)) {
+            ps.setString(1, profileId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                ResultSetMetaData meta = rs.getMetaData();
+                for (int i = 1; i <= meta.getColumnCount(); i++) {
+                    String column = meta.getColumnLabel(i);
+                    if (!column.equalsIgnoreCase("profile_id")) {
+                        columns.put(column, rs.getObject(i));
+                    }
                 }
-            } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, "Could not get active profile for player " + playerUuid, e);
             }
-            return Optional.empty();
-        }, runnable -> Bukkit.getScheduler().runTaskAsynchronously(plugin, runnable));
-    }
+        }
 
-    public CompletableFuture<Optional<UUID>> getPlayerActiveProfileId(Player player) {
-        return getPlayerActiveProfileId(plugin.getIdentityManager().getOriginalIdentity(player).uuid());
+        List<String[]> customData = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(GET_CUSTOM_DATA_ROWS)) {
+            ps.setString(1, profileId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    customData.add(new String[]{rs.getString(1), rs.getString(2), rs.getString(3)});
+                }
+            }
+        }
+
+        byte[] payload;
+        try {
+            payload = ProfileArchiveCodec.encode(new ProfileArchiveCodec.ArchivedProfile(columns, customData));
+        } catch (IOException e) {
+            throw new SQLException("Could not encode archive payload for " + profileId, e);
+        }
+
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_ARCHIVE)) {
+            ps.setString(1, profileId);
+            ps.setBytes(2, payload);
+            ps.setTimestamp(3, now);
+            ps.executeUpdate();
+        }
+        deleteByProfileId(DELETE_CUSTOM_DATA, List.of(profileId));
+        deleteByProfileId(DELETE_PROFILE_DATA, List.of(profileId));
+        try (PreparedStatement ps = connection.prepareStatement(SET_ARCHIVED_AT)) {
+            ps.setTimestamp(1, now);
+            ps.setString(2, profileId);
+            ps.executeUpdate();
+        }
+        return true;
     }
 
     /**
-     * Sets the active profile for a player. Use null to clear it.
-     * @param playerUuid The player's UUID.
-     * @param profileId The profile's UUID, or null.
+     * Restores an archived profile's rows into the live tables and drops the archive entry.
+     * Must be called inside {@link #inTransaction(SqlWork)}.
+     * @return false if the profile is not in the archive.
      */
-    public void setPlayerActiveProfile(UUID playerUuid, UUID profileId) {
-        // This is an "UPSERT" command (UPDATE or INSERT)
-        String sql = "INSERT INTO pc_players (player_uuid, active_profile_id) VALUES (?, ?) " +
-                "ON DUPLICATE KEY UPDATE active_profile_id = VALUES(active_profile_id);";
-        // SQLite has a different syntax for UPSERT
-        if (ConfigManager.getDatabaseType().equals("SQLITE")) {
-            sql = "INSERT INTO pc_players (player_uuid, active_profile_id) VALUES (?, ?) " +
-                    "ON CONFLICT(player_uuid) DO UPDATE SET active_profile_id = excluded.active_profile_id;";
+    private boolean restoreArchivedRows(String profileId) throws SQLException {
+        byte[] payload = null;
+        try (PreparedStatement ps = connection.prepareStatement(GET_ARCHIVE)) {
+            ps.setString(1, profileId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    payload = rs.getBytes(1);
+                }
+            }
+        }
+        if (payload == null) {
+            return false;
         }
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, playerUuid.toString());
-            ps.setString(2, profileId != null ? profileId.toString() : null);
+        ProfileArchiveCodec.ArchivedProfile archived;
+        try {
+            archived = ProfileArchiveCodec.decode(payload);
+        } catch (IOException e) {
+            throw new SQLException("Could not decode archive payload for " + profileId, e);
+        }
+
+        // Only restore columns that still exist, so older payloads survive schema changes
+        Set<String> liveColumns = new HashSet<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT * FROM pc_profile_data WHERE 1 = 0;")) {
+            ResultSetMetaData meta = rs.getMetaData();
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                liveColumns.add(meta.getColumnLabel(i).toLowerCase());
+            }
+        }
+
+        List<String> names = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        for (Map.Entry<String, Object> column : archived.columns().entrySet()) {
+            if (liveColumns.contains(column.getKey().toLowerCase())) {
+                names.add(column.getKey());
+                values.add(column.getValue());
+            }
+        }
+
+        // A blob GC run may already have scanned past this profile in both tables
+        Set<String> touched = itemBlobsTouchedDuringGc;
+        if (touched != null) {
+            for (Object value : values) {
+                if (value instanceof String column) {
+                    touched.addAll(referencedHashes(column));
+                }
+            }
+        }
+
+        deleteByProfileId(DELETE_PROFILE_DATA, List.of(profileId));
+        StringBuilder sql = new StringBuilder("INSERT INTO pc_profile_data (profile_id");
+        for (String name : names) {
+            sql.append(", ").append(name);
+        }
+        sql.append(") VALUES (?").append(", ?".repeat(names.size())).append(");");
+        try (PreparedStatement ps = connection.prepareStatement(sql.toString())) {
+            ps.setString(1, profileId);
+            for (int i = 0; i < values.size(); i++) {
+                ps.setObject(i + 2, values.get(i));
+            }
             ps.executeUpdate();
-        } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "Could not set active profile for player " + playerUuid, e);
+        }
+
+        deleteByProfileId(DELETE_CUSTOM_DATA, List.of(profileId));
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_CUSTOM_DATA)) {
+            for (String[] row : archived.customData()) {
+                ps.setString(1, profileId);
+                ps.setString(2, row[0]);
+                ps.setString(3, row[1]);
+                ps.setString(4, row[2]);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        deleteByProfileId(DELETE_ARCHIVE, List.of(profileId));
+        try (PreparedStatement ps = connection.prepareStatement(SET_ARCHIVED_AT)) {
+            ps.setTimestamp(1, null);
+            ps.setString(2, profileId);
+            ps.executeUpdate();
+        }
+        return true;
+    }
+
+    /**
+     * Serializes items for an item column. With item deduplication on, every item is stored once in
+     * pc_item_blobs and the column only holds the hashes. Must be called inside {@link #inTransaction(SqlWork)}
+     * so the blob GC cannot run between inserting a blob and saving the row that references it.
+     */
+    private String writeItems(ItemStack[] items) throws SQLException {
+        if (!ConfigManager.isItemDedupEnabled() || items == null) {
+            return stampItemPayload(Base64ItemSerializer.serialize(items));
+        }
+
+        StringBuilder refs = new StringBuilder(ITEM_REF_PREFIX);
+        try (PreparedStatement ps = connection.prepareStatement(insertItemBlobSql)) {
+            boolean pending = false;
+            for (int i = 0; i < items.length; i++) {
+                if (i > 0) refs.append(',');
+                ItemStack item = items[i];
+                if (item == null) continue;
+
+                String data = Base64ItemSerializer.serialize(new ItemStack[]{item});
+                String hash = ItemBlobCache.hash(data);
+                refs.append(hash);
+                Set<String> touched = itemBlobsTouchedDuringGc;
+                if (touched != null) {
+                    touched.add(hash);
+                }
+                // Always insert-or-ignore: the cache can't prove the row exists if this transaction rolls back
+                ps.setString(1, hash);
+                ps.setString(2, data);
+                ps.addBatch();
+                pending = true;
+            }
+            if (pending) {
+                ps.executeBatch();
+            }
+        }
+        return stampItemPayload(refs.toString());
+    }
+
+    /**
+     * Decoder handed to {@link ProfileImpl} for lazy item payloads. Unreadable or corrupt payloads quarantine
+     * the profile, so the empty array returned for them can never be saved over the stored items.
+     */
+    private ItemStack[] decodeItems(ProfileImpl profile, String payload) {
+        try {
+            return readItems(payload);
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Items of profile " + profile.getProfileId() + " are unreadable, quarantining it", e);
+            profile.setQuarantined(true);
+            quarantineProfile(profile.getProfileId(), e.getMessage());
+            return new ItemStack[0];
+        }
+    }
+
+    /**
+     * Deserializes an item column, resolving blob hashes through the shared cache first.
+     * Fails on checksum mismatches, unreadable data or missing blobs, rather than leaving slots empty.
+     */
+    private ItemStack[] readItems(String data) throws SQLException {
+        if (!verifyItemPayload(data)) {
+            throw new SQLException("Checksum mismatch in item payload");
+        }
+        data = stripItemPayloadVersion(data);
+        if (data == null || !data.startsWith(ITEM_REF_PREFIX)) {
+            return deserializeStrict(data);
+        }
+
+        // split with -1 keeps trailing empty slots
+        String[] hashes = data.substring(ITEM_REF_PREFIX.length()).split(",", -1);
+        ItemStack[] items = new ItemStack[hashes.length];
+        Map<String, String> missing = new HashMap<>();
+        for (int i = 0; i < hashes.length; i++) {
+            String hash = hashes[i];
+            if (hash.isEmpty()) continue;
+
+            items[i] = itemBlobCache.get(hash);
+            if (items[i] == null) {
+                missing.put(hash, null);
+            }
+        }
+        if (missing.isEmpty()) {
+            return items;
+        }
+
+        // Only the row reads hold the lock, so decodes of other payloads can fetch their blobs in between
+        synchronized (connectionLock) {
+            try (PreparedStatement ps = connection.prepareStatement(GET_ITEM_BLOB)) {
+                for (Map.Entry<String, String> blob : missing.entrySet()) {
+                    ps.setString(1, blob.getKey());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next()) {
+                            throw new SQLException("Item blob " + blob.getKey() + " is missing from pc_item_blobs");
+                        }
+                        blob.setValue(rs.getString(1));
+                    }
+                }
+            }
+        }
+
+        Map<String, ItemStack> decoded = new HashMap<>();
+        for (Map.Entry<String, String> blob : missing.entrySet()) {
+            ItemStack[] stacks = deserializeStrict(blob.getValue());
+            if (stacks.length > 0 && stacks[0] != null) {
+                decoded.put(blob.getKey(), stacks[0]);
+                itemBlobCache.put(blob.getKey(), stacks[0]);
+            }
+        }
+        for (int i = 0; i < hashes.length; i++) {
+            if (items[i] == null && !hashes[i].isEmpty()) {
+                items[i] = decoded.get(hashes[i]);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Mark-and-sweep GC for pc_item_blobs. A blob is deleted once it has been unreferenced for two runs in a row,
+     * so a load that read its row just before a save replaced it can still fetch the old blobs.
+     * Hashes, references and archive payloads are copied in batches, holding the connection lock only while a
+     * batch is read, and decoded and marked outside it. A reference that moves between tables mid-run may be
+     * missed once, which the two-run rule absorbs, and hashes written mid-run are spared. Only the delete runs
+     * in a transaction. MUST NOT be run on the main server thread.
+     * @param batchSize How many rows to read per batch.
+     * @return The number of blobs deleted.
+     */
+    public int collectItemBlobs(int batchSize) throws SQLException {
+        Set<String> touched = ConcurrentHashMap.newKeySet();
+        // No transaction is in flight while the lock is held, so every write after this is recorded
+        synchronized (connectionLock) {
+            itemBlobsTouchedDuringGc = touched;
+        }
+
+        try {
+            Set<String> unreferenced = new HashSet<>();
+            String after = "";
+            while (true) {
+                List<String> hashes = new ArrayList<>();
+                synchronized (connectionLock) {
+                    try (PreparedStatement ps = connection.prepareStatement(GET_ITEM_BLOB_HASHES)) {
+                        ps.setString(1, after);
+                        ps.setInt(2, batchSize);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                hashes.add(rs.getString(1));
+                            }
+                        }
+                    }
+                }
+                unreferenced.addAll(hashes);
+                if (hashes.size() < batchSize) break;
+                after = hashes.get(hashes.size() - 1);
+            }
+            if (unreferenced.isEmpty()) {
+                unreferencedItemBlobs = unreferenced;
+                return 0;
+            }
+
+            // Mark: live rows first, then the refs kept inside archived payloads. A row archived in between is
+            // seen in one table or the other.
+            after = "";
+            while (true) {
+                List<String[]> rows = new ArrayList<>();
+                synchronized (connectionLock) {
+                    try (PreparedStatement ps = connection.prepareStatement(GET_ITEM_REFERENCES)) {
+                        ps.setString(1, after);
+                        ps.setInt(2, batchSize);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                rows.add(new String[]{rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4)});
+                            }
+                        }
+                    }
+                }
+                for (String[] row : rows) {
+                    unmarkReferences(unreferenced, row[1]);
+                    unmarkReferences(unreferenced, row[2]);
+                    unmarkReferences(unreferenced, row[3]);
+                }
+                if (rows.size() < batchSize) break;
+                after = rows.get(rows.size() - 1)[0];
+            }
+
+            after = "";
+            while (true) {
+                List<byte[]> payloads = new ArrayList<>();
+                synchronized (connectionLock) {
+                    try (PreparedStatement ps = connection.prepareStatement(GET_ARCHIVE_PAYLOADS)) {
+                        ps.setString(1, after);
+                        ps.setInt(2, batchSize);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                after = rs.getString(1);
+                                payloads.add(rs.getBytes(2));
+                            }
+                        }
+                    }
+                }
+                for (byte[] payload : payloads) {
+                    try {
+                        ProfileArchiveCodec.ArchivedProfile archived = ProfileArchiveCodec.decode(payload);
+                        for (Object value : archived.columns().values()) {
+                            if (value instanceof String column) {
+                                unmarkReferences(unreferenced, column);
+                            }
+                        }
+                    } catch (IOException e) {
+                        // Can't tell what this payload references, so keep everything this run
+                        plugin.getLogger().log(Level.WARNING, "Could not read an archive payload during item blob GC, skipping sweep", e);
+                        return 0;
+                    }
+                }
+                if (payloads.size() < batchSize) break;
+            }
+
+            // Sweep: only what was already unreferenced last run
+            List<String> doomed = new ArrayList<>();
+            for (String hash : unreferenced) {
+                if (unreferencedItemBlobs.contains(hash)) {
+                    doomed.add(hash);
+                }
+            }
+            unreferenced.removeAll(doomed);
+
+            return inTransaction(() -> {
+                // A save may have deduplicated against one of these since the mark began
+                doomed.removeAll(touched);
+                unreferenced.removeAll(touched);
+                unreferencedItemBlobs = unreferenced;
+
+                if (!doomed.isEmpty()) {
+                    try (PreparedStatement ps = connection.prepareStatement(DELETE_ITEM_BLOB)) {
+                        for (String hash : doomed) {
+                            ps.setString(1, hash);
+                            ps.addBatch();
+                            itemBlobCache.invalidate(hash);
+                        }
+                        ps.executeBatch();
+                    }
+                }
+                return doomed.size();
+            });
+        } finally {
+            itemBlobsTouchedDuringGc = null;
+        }
+    }
+
+    private static void unmarkReferences(Set<String> unreferenced, String column) {
+        for (String hash : referencedHashes(column)) {
+            unreferenced.remove(hash);
+        }
+    }
+
+    private static List<String> referencedHashes(String column) {
+        column = stripItemPayloadVersion(column);
+        if (column == null || !column.startsWith(ITEM_REF_PREFIX)) {
+            return List.of();
+        }
+        List<String> hashes = new ArrayList<>();
+        for (String hash : column.substring(ITEM_REF_PREFIX.length()).split(",")) {
+            if (!hash.isEmpty()) {
+                hashes.add(hash);
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * @return Counts and average latencies for the archive tier since startup.
+     */
+    public ArchiveStats getArchiveStats() {
+        long archived = archivedCount.get();
+        long rehydrated = rehydratedCount.get();
+        return new ArchiveStats(archived, rehydrated,
+                archived > 0 ? archiveNanos.get() / 1_000_000.0 / archived : 0,
+                rehydrated > 0 ? rehydrateNanos.get() / 1_000_000.0 / rehydrated : 0);
+    }
+
+    /**
+     * Hands up to the given number of free pages back to the file system. Does nothing on MySQL,
+     * or on SQLite databases created before auto_vacuum was turned on.
+     */
+    public void incrementalVacuum(int pages) throws SQLException {
+        if (!ConfigManager.getDatabaseType().equals("SQLITE")) {
+            return;
+        }
+        synchronized (connectionLock) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA incremental_vacuum(" + pages + ");");
+            }
+        }
+    }
+
+    private List<String> selectIds(String sql, Timestamp cutoff, int limit) throws SQLException {
+        List<String> ids = new ArrayList<>();
+        synchronized (connectionLock) {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                int index = 1;
+                if (cutoff != null) {
+                    ps.setTimestamp(index++, cutoff);
+                }
+                ps.setInt(index, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getString(1));
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    private int deleteByProfileId(String sql, List<String> profileIds) throws SQLException {
+        int deleted = 0;
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            for (String profileId : profileIds) {
+                ps.setString(1, profileId);
+                ps.addBatch();
+            }
+            for (int count : ps.executeBatch()) {
+                if (count > 0) deleted += count;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Runs the given work in a single transaction on the shared connection, rolling back if it fails.
+     * Holds the connection lock throughout, like every other use of the connection.
+     */
+    private <T> T inTransaction(SqlWork<T> work) throws SQLException {
+        synchronized (connectionLock) {
+            if (!connection.getAutoCommit()) {
+                // Already inside a transaction on this thread, so join it
+                return work.run();
+            }
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                T result = work.run();
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    private static ItemStack[] deserializeStrict(String data) throws SQLException {
+        try {
+            return Base64ItemSerializer.deserializeOrThrow(data);
+        } catch (IOException | ClassNotFoundException | IllegalArgumentException e) {
+            throw new SQLException("Could not deserialize items", e);
+        }
+    }
+
+    private String stampItemPayload(String payload) {
+        return ITEM_VERSION_PREFIX + itemDataVersion + ":" + String.format("%08x", checksum(payload)) + ":" + payload;
+    }
+
+    /**
+     * The "v&lt;dataVersion&gt;:&lt;crc32c&gt;:" header of an item column.
+     * @param checksum The CRC32C of the body, or -1 for payloads written before checksums.
+     * @param bodyStart Where the Base64 or ref payload starts.
+     */
+    private record ItemPayloadHeader(int version, long checksum, int bodyStart) {}
+
+    /**
+     * Parses the header of an item column. Base64 and ref payloads never contain "v&lt;digits&gt;:" or
+     * eight hex digits followed by ':' at their start, so the header is unambiguous.
+     * @return The header, or null for payloads written before version stamps.
+     */
+    private static ItemPayloadHeader parseItemPayloadHeader(String payload) {
+        if (payload == null || !payload.startsWith(ITEM_VERSION_PREFIX)) {
+            return null;
+        }
+        int colon = payload.indexOf(':');
+        if (colon <= ITEM_VERSION_PREFIX.length()) {
+            return null;
+        }
+        int version;
+        try {
+            version = Integer.parseInt(payload, ITEM_VERSION_PREFIX.length(), colon, 10);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        int checksumEnd = colon + 1 + ITEM_CHECKSUM_LENGTH;
+        if (payload.length() > checksumEnd && payload.charAt(checksumEnd) == ':') {
+            try {
+                return new ItemPayloadHeader(version, Long.parseLong(payload, colon + 1, checksumEnd, 16), checksumEnd + 1);
+            } catch (NumberFormatException e) {
+                // Not a checksum; stamped before checksums were added
+            }
+        }
+        return new ItemPayloadHeader(version, -1, colon + 1);
+    }
+
+    /**
+     * @return The data version an item column was written at, or -1 if it predates version stamps.
+     */
+    private static int getItemPayloadVersion(String payload) {
+        ItemPayloadHeader header = parseItemPayloadHeader(payload);
+        return header != null ? header.version() : -1;
+    }
+
+    // Payloads without a header are returned unchanged
+    private static String stripItemPayloadVersion(String payload) {
+        ItemPayloadHeader header = parseItemPayloadHeader(payload);
+        return header != null ? payload.substring(header.bodyStart()) : payload;
+    }
+
+    /**
+     * Checks an item column against its checksum. Columns written before checksums always pass.
+     * @return true if the column is intact.
+     */
+    private static boolean verifyItemPayload(String payload) {
+        ItemPayloadHeader header = parseItemPayloadHeader(payload);
+        if (header == null || header.checksum() < 0) {
+            return true;
+        }
+        return checksum(payload, header.bodyStart()) == header.checksum();
+    }
+
+    private static long checksum(String payload) {
+        return checksum(payload, 0);
+    }
+
+    // CRC32C of the ASCII payload, fed through a small buffer instead of copying the whole string to bytes
+    private static long checksum(String payload, int from) {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[8192];
+        int length = payload.length();
+        for (int i = from; i < length; ) {
+            int count = Math.min(buffer.length, length - i);
+            for (int j = 0; j < count; j++) {
+                buffer[j] = (byte) payload.charAt(i + j);
+            }
+            crc.update(buffer, 0, count);
+            i += count;
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * @return true if an item column was written at this server's data version, so it can be saved back as-is.
+     */
+    private boolean isCurrentItemFormat(String payload) {
+        return payload == null || getItemPayloadVersion(payload) >= itemDataVersion;
+    }
+
+    /**
+     * Upgrades one batch of item columns written by an older server version, so they are not run through the
+     * DataFixer on every load. Rows are scanned in profile id order, starting after the given id.
+     * Rows that can't be decoded are left alone, and profiles that are in use are skipped, since their save
+     * re-encodes them anyway. MUST NOT be run on the main server thread.
+     * @param afterProfileId Resume the scan after this profile id; an empty string starts from the beginning.
+     * @param batchSize The maximum number of rows to look at.
+     * @param inUse Tells whether a profile is currently loaded on this server.
+     * @return The counts for this batch and where to resume.
+     */
+    public ItemUpgradeResult upgradeItemFormats(String afterProfileId, int batchSize, Predicate<UUID> inUse) throws SQLException {
+        String current = ITEM_VERSION_PREFIX + itemDataVersion + ":%";
+        List<String[]> rows = new ArrayList<>();
+        synchronized (connectionLock) {
+            try (PreparedStatement ps = connection.prepareStatement(SELECT_OUTDATED_ITEM_ROWS)) {
+                ps.setString(1, afterProfileId);
+                ps.setString(2, current);
+                ps.setString(3, current);
+                ps.setString(4, current);
+                ps.setInt(5, batchSize);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(new String[]{rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4)});
+                    }
+                }
+            }
+        }
+
+        int upgraded = 0;
+        int failed = 0;
+        for (String[] row : rows) {
+            String profileId = row[0];
+            if (inUse.test(UUID.fromString(profileId))) {
+                continue;
+            }
+
+            // Decode outside the transaction; this is where the DataFixer runs
+            ItemStack[][] items = new ItemStack[3][];
+            boolean outdated = false;
+            try {
+                for (int i = 0; i < 3; i++) {
+                    if (!isCurrentItemFormat(row[i + 1])) {
+                        items[i] = readItems(row[i + 1]);
+                        outdated = true;
+                    }
+                }
+            } catch (SQLException e) {
+                failed++;
+                plugin.getLogger().log(Level.WARNING, "Could not upgrade items of profile " + profileId + ", leaving them as they are", e);
+                continue;
+            }
+            // Written by a newer server version; nothing to do
+            if (!outdated) {
+                continue;
+            }
+
+            boolean written = inTransaction(() -> {
+                // A save may have rewritten the row since it was read
+                try (PreparedStatement ps = connection.prepareStatement(GET_ITEM_COLUMNS)) {
+                    ps.setString(1, profileId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next() || !Objects.equals(rs.getString(1), row[1])
+                                || !Objects.equals(rs.getString(2), row[2]) || !Objects.equals(rs.getString(3), row[3])) {
+                            return false;
+                        }
+                    }
+                }
+                try (PreparedStatement ps = connection.prepareStatement(UPDATE_ITEM_COLUMNS)) {
+                    for (int i = 0; i < 3; i++) {
+                        ps.setString(i + 1, items[i] != null ? writeItems(items[i]) : row[i + 1]);
+                    }
+                    ps.setString(4, profileId);
+                    return ps.executeUpdate() > 0;
+                }
+            });
+            if (written) {
+                upgraded++;
+            }
+        }
+
+        String resumeAfter = rows.size() < batchSize ? "" : rows.get(rows.size() - 1)[0];
+        return new ItemUpgradeResult(rows.size(), upgraded, failed, resumeAfter);
+    }
+
+    /**
+     * Verifies the checksums of one batch of item columns, in profile id order, starting after the given id.
+     * Only the checksums are checked; nothing is decoded. Corrupt rows are quarantined.
+     * MUST NOT be run on the main server thread.
+     * @param afterProfileId Resume the scan after this profile id; an empty string starts from the beginning.
+     * @param batchSize The maximum number of rows to look at.
+     * @return The corrupt profiles found in this batch and where to resume.
+     */
+    public ScrubResult scrubItemPayloads(String afterProfileId, int batchSize) throws SQLException {
+        int scanned = 0;
+        String lastProfileId = afterProfileId;
+        List<UUID> corrupted = new ArrayList<>();
+        synchronized (connectionLock) {
+            try (PreparedStatement ps = connection.prepareStatement(SELECT_ITEM_ROWS_AFTER)) {
+                ps.setString(1, afterProfileId);
+                ps.setInt(2, batchSize);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        scanned++;
+                        lastProfileId = rs.getString(1);
+                        if (!verifyItemPayload(rs.getString(2)) || !verifyItemPayload(rs.getString(3)) || !verifyItemPayload(rs.getString(4))) {
+                            corrupted.add(UUID.fromString(lastProfileId));
+                        }
+                    }
+                }
+            }
+        }
+
+        for (UUID profileId : corrupted) {
+            quarantineProfile(profileId, "Checksum mismatch found by the scrubber");
+        }
+
+        String resumeAfter = scanned < batchSize ? "" : lastProfileId;
+        return new ScrubResult(scanned, corrupted, resumeAfter);
+    }
+
+    /**
+     * Marks a profile as quarantined, so it is not saved over until {@link #releaseQuarantine(UUID)} is called.
+     * Errors are logged; the in-memory flag on a loaded profile still protects it for this session.
+     * @param profileId The profile.
+     * @param reason Why it was quarantined, for the logs and admins.
+     */
+    public void quarantineProfile(UUID profileId, String reason) {
+        synchronized (connectionLock) {
+            try (PreparedStatement ps = connection.prepareStatement(insertQuarantineSql)) {
+                ps.setString(1, profileId.toString());
+                ps.setString(2, reason);
+                ps.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+                ps.executeUpdate();
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not quarantine profile " + profileId, e);
+            }
+        }
+    }
+
+    /**
+     * Releases a quarantined profile, once its data has been repaired or accepted as lost.
+     * Already loaded copies stay quarantined until they are loaded again.
+     * @param profileId The profile.
+     * @return A CompletableFuture that completes with true if the profile was quarantined.
+     */
+    public CompletableFuture<Boolean> releaseQuarantine(UUID profileId) {
+        return CompletableFuture.supplyAsync(() -> {
+            synchronized (connectionLock) {
+                try (PreparedStatement ps = connection.prepareStatement(DELETE_QUARANTINE)) {
+                    ps.setString(1, profileId.toString());
+                    return ps.executeUpdate() > 0;
+                } catch (SQLException e) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not release quarantine of profile " + profileId, e);
+                    return false;
+                }
+            }
+        }, runnable -> plugin.getTaskScheduler().runAsync(runnable));
+    }
+
+    @FunctionalInterface
+    private interface SqlWork<T> {
+        T run() throws SQLException;
+    }
+
+    /**
+     * The outcome of one {@link #upgradeItemFormats(String, int, Predicate)} batch.
+     * @param resumeAfter The profile id to pass to the next batch, or an empty string once the scan is complete.
+     */
+    public record ItemUpgradeResult(int scanned, int upgraded, int failed, String resumeAfter) {}
+
+    /**
+     * The outcome of one {@link #scrubItemPayloads(String, int)} batch.
+     * @param corrupted The profiles whose checksums did not match; they have been quarantined.
+     * @param resumeAfter The profile id to pass to the next batch, or an empty string once the scan is complete.
+     */
+    public record ScrubResult(int scanned, List<UUID> corrupted, String resumeAfter) {}
+
+    /**
+     * Archive tier activity since startup.
+     */
+    public record ArchiveStats(long archived, long rehydrated, double averageArchiveMillis, double averageRehydrateMillis) {}
+
+    /**
+     * The number of rows cleaned up by one {@link #sweep(int, long)} run.
+     */
+    public record SweepResult(int purgedProfiles, int orphanedProfileData, int orphanedCustomData, int clearedActivePointers) {
+        public int total() {
+            return purgedProfiles + orphanedProfileData + orphanedCustomData + clearedActivePointers;
+        }
+    }
+
+    /**
+     * Asynchronously gets the UUID of the last active profile for a given player.
+     * @param playerUuid The player's UUID.
+     * @return A CompletableFuture that will complete with an Optional containing the profile UUID.
+     */
+    public CompletableFuture<Optional<UUID>> getPlayerActiveProfileId(UUID playerUuid) {
+        return CompletableFuture.supplyAsync(() -> {
+            // A queued write is newer than whatever is in the table
+            String pending = pendingActiveProfiles.get(playerUuid);
+            if (pending != null) {
+                return pending.equals(NO_ACTIVE_PROFILE) ? Optional.empty() : Optional.of(UUID.fromString(pending));
+            }
+
+            synchronized (connectionLock) {
+                try (PreparedStatement ps = connection.prepareStatement(GET_ACTIVE_PROFILE)) {
+                    ps.setString(1, playerUuid.toString());
+                    ResultSet rs = ps.executeQuery();
+                    if (rs.next()) {
+                        String profileId = rs.getString("active_profile_id");
+                        return profileId != null ? Optional.of(UUID.fromString(profileId)) : Optional.empty();
+                    }
+                } catch (SQLException e) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not get active profile for player " + playerUuid, e);
+                }
+            }
+            return Optional.empty();
+        }, runnable -> plugin.getTaskScheduler().runAsync(runnable));
+    }
+
+    public CompletableFuture<Optional<UUID>> getPlayerActiveProfileId(Player player) {
+        PlayerSession session = plugin.getIdentityManager().getSession(player);
+        if (session == null) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return getPlayerActiveProfileId(session.getOriginalUUID());
+    }
+
+    /**
+     * Asynchronously sets the active profile for a player. Use null to clear it.
+     * The write is queued and coalesced per player: if the player switches again before it is flushed,
+     * only the latest pointer is written.
+     * @param playerUuid The player's original UUID.
+     * @param profileId The profile's UUID, or null.
+     * @return A CompletableFuture that completes once the pointer has been written.
+     */
+    public CompletableFuture<Void> setPlayerActiveProfile(UUID playerUuid, UUID profileId) {
+        queueActiveProfile(playerUuid, profileId);
+
+        return CompletableFuture.runAsync(() -> {
+            try {
+                clearWrittenActiveProfiles(inTransaction(this::writePendingActiveProfiles));
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not set active profile for player " + playerUuid, e);
+            }
+        }, runnable -> plugin.getTaskScheduler().runAsync(runnable));
+    }
+
+    /**
+     * Asynchronously saves a profile and sets the player's active profile in one transaction.
+     * Used when switching, where the old profile is saved and the pointer moves to the new one.
+     * @param profile The profile to save.
+     * @param playerUuid The player's original UUID.
+     * @param activeProfileId The profile's UUID to set as active, or null.
+     * @return A CompletableFuture that completes when both writes are done.
+     */
+    public CompletableFuture<Void> saveProfileAndSetActive(Profile profile, UUID playerUuid, UUID activeProfileId) {
+        queueActiveProfile(playerUuid, activeProfileId);
+        return saveProfile(profile);
+    }
+
+    private void queueActiveProfile(UUID playerUuid, UUID profileId) {
+        pendingActiveProfiles.put(playerUuid, profileId != null ? profileId.toString() : NO_ACTIVE_PROFILE);
+    }
+
+    /**
+     * Writes every queued active profile pointer in a transaction of its own. MUST NOT be run on the main server thread.
+     */
+    private void flushActiveProfiles() {
+        try {
+            clearWrittenActiveProfiles(inTransaction(this::writePendingActiveProfiles));
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not write active profile pointers", e);
+        }
+    }
+
+    /**
+     * Writes every queued active profile pointer in one batch. Must be called inside {@link #inTransaction(SqlWork)}.
+     * @return The entries that were written, to be cleared with {@link #clearWrittenActiveProfiles(List)} after commit.
+     */
+    private List<Map.Entry<UUID, String>> writePendingActiveProfiles() throws SQLException {
+        if (pendingActiveProfiles.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Map.Entry<UUID, String>> written = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(upsertActiveProfileSql)) {
+            for (Map.Entry<UUID, String> entry : pendingActiveProfiles.entrySet()) {
+                String profileId = entry.getValue();
+                ps.setString(1, entry.getKey().toString());
+                ps.setString(2, profileId.equals(NO_ACTIVE_PROFILE) ? null : profileId);
+                ps.addBatch();
+                written.add(Map.entry(entry.getKey(), profileId));
+            }
+            ps.executeBatch();
+        }
+        return written;
+    }
+
+    /**
+     * Drops written pointers from the queue, unless the player switched again while they were being written.
+     */
+    private void clearWrittenActiveProfiles(List<Map.Entry<UUID, String>> written) {
+        for (Map.Entry<UUID, String> entry : written) {
+            pendingActiveProfiles.remove(entry.getKey(), entry.getValue());
         }
     }
 }
@@ -2,11 +2,11 @@ package ca.xef5000.playerprofiles.managers;
 
 import ca.xef5000.playerprofiles.PlayerProfiles;
 import ca.xef5000.playerprofiles.api.data.IdentityData;
-import ca.xef5000.playerprofiles.api.data.PlayerIdentity;
 import ca.xef5000.playerprofiles.api.services.NMSService;
+import ca.xef5000.playerprofiles.data.PlayerSession;
 import org.bukkit.entity.Player;
 
-import java.util.Map;
+import java.util.Collection;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
@@ -18,10 +18,8 @@ public class IdentityManager {
     private final NMSService nmsHandler;
     private final PlayerProfiles plugin;
 
-    private final Map<UUID, PlayerIdentity> identityCache = new ConcurrentHashMap<>();
-
-    // Map from CURRENT UUID to ORIGINAL UUID (for reverse lookups)
-    private final Map<UUID, UUID> currentToOriginalUUID = new ConcurrentHashMap<>();
+    // The session of every connected player, by original and by current UUID, kept in sync per player
+    private final IdentityRegistry registry = new IdentityRegistry();
 
     // Track if we've already cleaned up a player to prevent double cleanup
     private final Set<UUID> cleanedUpPlayers = ConcurrentHashMap.newKeySet();
@@ -42,11 +40,8 @@ public class IdentityManager {
 
         IdentityData originalIdentity = nmsHandler.getOriginalIdentity(player);
 
-        // Store in cache using their ORIGINAL UUID
-        identityCache.put(originalUUID, new PlayerIdentity(originalIdentity));
-
         // Initially, current UUID = original UUID
-        currentToOriginalUUID.put(originalUUID, originalUUID);
+        registry.register(originalUUID, new PlayerSession(originalUUID, originalIdentity));
 
         plugin.getLogger().info("Cached original identity for " + player.getName() + " with UUID: " + originalUUID);
     }
@@ -58,43 +53,26 @@ public class IdentityManager {
         UUID currentUUID = player.getUniqueId();
 
         // Check if we've already cleaned up this player to prevent double cleanup
-        if (cleanedUpPlayers.contains(currentUUID)) {
+        if (!cleanedUpPlayers.add(currentUUID)) {
             plugin.getLogger().info("Player " + player.getName() + " already cleaned up, skipping");
             return;
         }
 
         try {
-            // Mark as being cleaned up
-            cleanedUpPlayers.add(currentUUID);
-
-            // Find the original UUID for this player
-            UUID originalUUID = currentToOriginalUUID.get(currentUUID);
-
-            if (originalUUID == null) {
-                // This might happen if the UUID was changed - search through the reverse mapping
-                originalUUID = findOriginalUUID(currentUUID);
-            }
+            UUID originalUUID = registry.findOriginalUUID(currentUUID);
 
             if (originalUUID != null) {
-                PlayerIdentity identity = identityCache.get(originalUUID);
-                if (identity != null && identity.getAppliedIdentity() != null) {
+                PlayerSession identity = registry.findByCurrent(currentUUID);
+                if (identity != null && !currentUUID.equals(originalUUID)) {
                     // Player has a changed identity - revert them first
                     plugin.getLogger().info("Reverting " + player.getName() + " back to original UUID before logout");
                     plugin.getLogger().info("Current UUID: " + currentUUID + ", Original UUID: " + originalUUID);
 
-                    IdentityData originalIdentity = identity.getOriginalIdentity();
-                    nmsHandler.applyIdentity(player, originalIdentity);
-
-                    // Update the mapping - currentUUID should now be the original UUID
-                    currentToOriginalUUID.remove(currentUUID);
-                    // Don't re-add the mapping as the player is logging out
+                    nmsHandler.applyIdentity(player, identity.getOriginalIdentity());
                 }
 
-                // Clean up cache
-                identityCache.remove(originalUUID);
-                // Clean up all mappings that point to this original UUID
-                UUID finalOriginalUUID = originalUUID;
-                currentToOriginalUUID.entrySet().removeIf(entry -> entry.getValue().equals(finalOriginalUUID));
+                // Drops both the original and the current mapping
+                registry.unregister(originalUUID);
 
                 // Cleanup entity references
                 nmsHandler.cleanupPlayerOnLogout(player);
@@ -103,8 +81,7 @@ public class IdentityManager {
             } else {
                 plugin.getLogger().warning("Could not find original UUID for player " + player.getName() + " (current: " + currentUUID + ")");
                 // Fallback cleanup - treat current UUID as original
-                identityCache.remove(currentUUID);
-                currentToOriginalUUID.remove(currentUUID);
+                registry.unregister(currentUUID);
                 nmsHandler.cleanupPlayerOnLogout(player);
             }
         } catch (Exception e) {
@@ -123,23 +100,19 @@ public class IdentityManager {
     public void revertToOriginalIdentity(Player player) {
         try {
             UUID currentUUID = player.getUniqueId();
-            UUID originalUUID = findOriginalUUID(currentUUID); // Using your existing private helper
+            UUID originalUUID = registry.findOriginalUUID(currentUUID);
 
-            if (originalUUID != null) {
-                PlayerIdentity identity = identityCache.get(originalUUID);
-                if (identity != null && !currentUUID.equals(originalUUID)) {
-                    // Get the original GameProfile data
-                    IdentityData originalIdentityData = identity.getOriginalIdentity();
+            if (originalUUID != null && !currentUUID.equals(originalUUID)) {
+                // Get the original GameProfile data
+                IdentityData originalIdentityData = registry.findByCurrent(currentUUID).getOriginalIdentity();
 
-                    // Apply it via NMS
-                    nmsHandler.applyIdentity(player, originalIdentityData);
+                // Apply it via NMS
+                nmsHandler.applyIdentity(player, originalIdentityData);
 
-                    // Update the live mapping
-                    currentToOriginalUUID.remove(currentUUID);
-                    currentToOriginalUUID.put(originalUUID, originalUUID);
+                // Update the live mapping
+                registry.setApplied(currentUUID, originalIdentityData);
 
-                    plugin.getLogger().info("Reverted " + player.getName() + " to original identity before logout.");
-                }
+                plugin.getLogger().info("Reverted " + player.getName() + " to original identity before logout.");
             }
         } catch (Exception e) {
             plugin.getLogger().severe("Could not revert player " + player.getName() + " to original identity!");
@@ -148,109 +121,49 @@ public class IdentityManager {
     }
 
     /**
-     * Find the original UUID by searching through the identity cache
+     * Gets a player's session. Every online player has one from login until quit, so a miss means the
+     * registry is out of sync with the player. It is logged rather than papered over with a new session,
+     * which would take the player's current UUID, possibly a profile's, for their original one.
+     * @param player The player.
+     * @return The session, or null if the player has none.
      */
-    private UUID findOriginalUUID(UUID currentUUID) {
-        // First try the direct mapping
-        UUID original = currentToOriginalUUID.get(currentUUID);
-        if (original != null) {
-            return original;
-        }
-
-        // If that fails, search through the identity cache
-        for (Map.Entry<UUID, PlayerIdentity> entry : identityCache.entrySet()) {
-            PlayerIdentity identity = entry.getValue();
-            if (identity.getAppliedIdentity() != null &&
-                    identity.getAppliedIdentity().uuid().equals(currentUUID)) {
-                return entry.getKey(); // This is the original UUID
-            }
-        }
-
-        // If still not found, the currentUUID might be the original
-        if (identityCache.containsKey(currentUUID)) {
-            return currentUUID;
+    public PlayerSession getSession(Player player) {
+        PlayerSession session = registry.findByCurrent(player.getUniqueId());
+        if (session == null) {
+            plugin.getLogger().warning("No session for " + player.getName() + " (current UUID: " + player.getUniqueId() + ")");
         }
+        return session;
+    }
 
-        return null;
+    /**
+     * @return The sessions of all connected players. Safe to call from any thread.
+     */
+    public Collection<PlayerSession> getSessions() {
+        return registry.getSessions();
     }
 
     // --- Implementation of the IdentityService API ---
 
     public IdentityData getOriginalIdentity(Player player) {
-        UUID currentUUID = player.getUniqueId();
-        UUID originalUUID = currentToOriginalUUID.get(currentUUID);
-
-        if (originalUUID == null) {
-            // Try to find it by searching
-            originalUUID = findOriginalUUID(currentUUID);
-            if (originalUUID == null) {
-                // Fallback: assume current UUID is original (new player or no changes made)
-                originalUUID = currentUUID;
-                // Only call handlePlayerLogin if we don't have any cached data
-                if (!identityCache.containsKey(originalUUID)) {
-                    handlePlayerLogin(player); // This will cache it properly
-                }
-            }
-        }
-
-        PlayerIdentity identity = identityCache.get(originalUUID);
-        if (identity == null) {
-            // Last resort: re-cache the player data
-            handlePlayerLogin(player);
-            identity = identityCache.get(originalUUID);
-        }
-
-        return identity != null ? identity.getOriginalIdentity() : null;
+        PlayerSession session = getSession(player);
+        return session != null ? session.getOriginalIdentity() : null;
     }
 
     public Optional<IdentityData> getAppliedIdentity(Player player) {
-        UUID currentUUID = player.getUniqueId();
-        UUID originalUUID = currentToOriginalUUID.get(currentUUID);
-
-        if (originalUUID == null) {
-            originalUUID = findOriginalUUID(currentUUID);
-        }
-
-        if (originalUUID != null) {
-            PlayerIdentity identity = identityCache.get(originalUUID);
-            if (identity != null) {
-                return Optional.ofNullable(identity.getAppliedIdentity());
-            }
-        }
-
-        return Optional.empty();
+        PlayerSession identity = registry.findByCurrent(player.getUniqueId());
+        return identity != null ? Optional.ofNullable(identity.getAppliedIdentity()) : Optional.empty();
     }
 
     public void applyIdentity(Player player, IdentityData newIdentity) {
         try {
             UUID currentUUID = player.getUniqueId();
-            UUID originalUUID = currentToOriginalUUID.get(currentUUID);
 
-            if (originalUUID == null) {
-                originalUUID = findOriginalUUID(currentUUID);
-                if (originalUUID == null) {
-                    // First time applying identity - current UUID is original
-                    originalUUID = currentUUID;
-                }
+            // Update cache and UUID mappings
+            if (registry.setApplied(currentUUID, newIdentity) == null) {
+                throw new IllegalStateException("No session for " + player.getName());
             }
 
-            PlayerIdentity identity = identityCache.get(originalUUID);
-            if (identity == null) {
-                handlePlayerLogin(player);
-                identity = identityCache.get(originalUUID);
-            }
-
-            UUID oldCurrentUUID = currentUUID;
-            UUID newCurrentUUID = newIdentity.uuid();
-
-            // Update cache
-            identity.setAppliedIdentity(newIdentity);
-
-            // Update UUID mappings
-            currentToOriginalUUID.remove(oldCurrentUUID);
-            currentToOriginalUUID.put(newCurrentUUID, originalUUID);
-
-            plugin.getLogger().info("UUID mapping: " + newCurrentUUID + " -> " + originalUUID);
+            plugin.getLogger().info("UUID mapping: " + newIdentity.uuid() + " -> " + registry.findOriginalUUID(newIdentity.uuid()));
 
             // Delegate to NMS handler
             nmsHandler.applyIdentity(player, newIdentity);
@@ -264,22 +177,11 @@ public class IdentityManager {
 
     public void resetIdentity(Player player) {
         try {
-            UUID currentUUID = player.getUniqueId();
-            UUID originalUUID = currentToOriginalUUID.get(currentUUID);
-
-            if (originalUUID == null) {
-                originalUUID = findOriginalUUID(currentUUID);
-            }
-
-            if (originalUUID != null) {
-                PlayerIdentity identity = identityCache.get(originalUUID);
-                if (identity != null) {
-                    applyIdentity(player, identity.getOriginalIdentity());
-                } else {
-                    plugin.getLogger().warning("Could not find cached identity for " + player.getName());
-                }
+            PlayerSession identity = registry.findByCurrent(player.getUniqueId());
+            if (identity != null) {
+                applyIdentity(player, identity.getOriginalIdentity());
             } else {
-                plugin.getLogger().warning("Could not find original UUID for " + player.getName());
+                plugin.getLogger().warning("Could not find cached identity for " + player.getName());
             }
         } catch (Exception e) {
             plugin.getLogger().severe("Error resetting identity for " + player.getName() + ": " + e.getMessage());
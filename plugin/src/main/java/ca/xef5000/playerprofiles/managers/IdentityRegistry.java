@@ -0,0 +1,120 @@
+package ca.xef5000.playerprofiles.managers;
+
+import ca.xef5000.playerprofiles.api.data.IdentityData;
+import ca.xef5000.playerprofiles.data.PlayerSession;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The sessions of connected players, indexed both by their original UUID and by the UUID they currently have.
+ * Every lookup and update is a constant number of hash operations. Each player's entry is only changed while
+ * holding that entry's lock, and a new current UUID is indexed before the old one is dropped, so a reader
+ * always finds the player under one of the two.
+ */
+public final class IdentityRegistry {
+
+    private final Map<UUID, Entry> byOriginal = new ConcurrentHashMap<>();
+    private final Map<UUID, Entry> byCurrent = new ConcurrentHashMap<>();
+
+    private static final class Entry {
+        final UUID originalUUID;
+        final PlayerSession session;
+        // Guarded by this entry
+        UUID currentUUID;
+
+        Entry(UUID originalUUID, PlayerSession session) {
+            this.originalUUID = originalUUID;
+            this.session = session;
+            this.currentUUID = originalUUID;
+        }
+    }
+
+    /**
+     * Registers a player that just logged in under their original UUID, replacing any stale entry for them.
+     */
+    public void register(UUID originalUUID, PlayerSession session) {
+        Entry entry = new Entry(originalUUID, session);
+        Entry previous = byOriginal.put(originalUUID, entry);
+        byCurrent.put(originalUUID, entry);
+        if (previous != null) {
+            synchronized (previous) {
+                byCurrent.remove(previous.currentUUID, previous);
+            }
+        }
+    }
+
+    /**
+     * @param currentUUID The UUID the player has right now.
+     * @return The player's session, or null if they are not registered.
+     */
+    public PlayerSession findByCurrent(UUID currentUUID) {
+        Entry entry = byCurrent.get(currentUUID);
+        return entry != null ? entry.session : null;
+    }
+
+    /**
+     * @param currentUUID The UUID the player has right now.
+     * @return The UUID the player logged in with, or null if they are not registered.
+     */
+    public UUID findOriginalUUID(UUID currentUUID) {
+        Entry entry = byCurrent.get(currentUUID);
+        return entry != null ? entry.originalUUID : null;
+    }
+
+    /**
+     * Records that a player now has the given identity, and re-indexes them under its UUID.
+     * @param currentUUID The UUID the player has before the change.
+     * @param applied The identity being applied.
+     * @return The player's session, or null if they are not registered.
+     */
+    public PlayerSession setApplied(UUID currentUUID, IdentityData applied) {
+        Entry entry = byCurrent.get(currentUUID);
+        if (entry == null) {
+            return null;
+        }
+
+        synchronized (entry) {
+            // The player quit after the lookup; re-indexing now would leave them in byCurrent for good
+            if (byOriginal.get(entry.originalUUID) != entry) {
+                return null;
+            }
+            entry.session.setAppliedIdentity(applied);
+            UUID newCurrentUUID = applied.uuid();
+            if (!newCurrentUUID.equals(entry.currentUUID)) {
+                byCurrent.put(newCurrentUUID, entry);
+                byCurrent.remove(entry.currentUUID, entry);
+                entry.currentUUID = newCurrentUUID;
+            }
+        }
+        return entry.session;
+    }
+
+    /**
+     * Removes a player from both indexes.
+     * @param uuid The player's current UUID, or their original one.
+     */
+    public void unregister(UUID uuid) {
+        Entry entry = byCurrent.get(uuid);
+        if (entry == null) {
+            entry = byOriginal.get(uuid);
+        }
+        if (entry == null) {
+            return;
+        }
+
+        synchronized (entry) {
+            byOriginal.remove(entry.originalUUID, entry);
+            byCurrent.remove(entry.currentUUID, entry);
+        }
+    }
+
+    /**
+     * @return A snapshot of all sessions. Safe to call from any thread.
+     */
+    public Collection<PlayerSession> getSessions() {
+        return byOriginal.values().stream().map(entry -> entry.session).toList();
+    }
+}
@@ -0,0 +1,81 @@
+package ca.xef5000.playerprofiles.managers;
+
+import ca.xef5000.playerprofiles.PlayerProfiles;
+import ca.xef5000.playerprofiles.api.services.TaskScheduler;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * Background job that rewrites item columns stored by an older server version, a small batch at a time.
+ * Each run picks up where the last one stopped; once a full pass is done it starts over, which finds nothing
+ * until the next Minecraft update. The actual work is in {@link DatabaseManager#upgradeItemFormats}.
+ */
+public class ItemFormatUpgrader {
+
+    private final PlayerProfiles plugin;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private TaskScheduler.Task task;
+
+    // Only touched by the job itself, which never runs twice at once
+    private String resumeAfter = "";
+    private int passUpgraded;
+    private int passFailed;
+
+    public ItemFormatUpgrader(PlayerProfiles plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Schedules the repeating upgrade job if it is enabled in the config.
+     */
+    public void start() {
+        if (!ConfigManager.isItemUpgradeEnabled()) {
+            return;
+        }
+
+        long intervalTicks = ConfigManager.getItemUpgradeIntervalMinutes() * 60L * 20L;
+        task = plugin.getTaskScheduler().runAsyncTimer(this::runUpgrade, intervalTicks, intervalTicks);
+    }
+
+    /**
+     * Cancels the repeating upgrade job.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Upgrades one batch. MUST NOT be run on the main server thread.
+     */
+    private void runUpgrade() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            DatabaseManager.ItemUpgradeResult result = plugin.getDatabaseManager().upgradeItemFormats(
+                    resumeAfter, ConfigManager.getItemUpgradeBatchSize(), plugin.getProfileManager()::isProfileActive);
+            passUpgraded += result.upgraded();
+            passFailed += result.failed();
+            resumeAfter = result.resumeAfter();
+
+            if (resumeAfter.isEmpty()) {
+                if (passUpgraded > 0 || passFailed > 0) {
+                    plugin.getLogger().info("Item format upgrade pass finished: " + passUpgraded + " profiles upgraded, "
+                            + passFailed + " could not be read.");
+                }
+                passUpgraded = 0;
+                passFailed = 0;
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Item format upgrade failed, will retry on the next run", e);
+        } finally {
+            running.set(false);
+        }
+    }
+}
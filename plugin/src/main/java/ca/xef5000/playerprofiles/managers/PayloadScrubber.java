@@ -0,0 +1,85 @@
+package ca.xef5000.playerprofiles.managers;
+
+import ca.xef5000.playerprofiles.PlayerProfiles;
+import ca.xef5000.playerprofiles.api.services.TaskScheduler;
+
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * Background job that verifies the checksums of stored items, a batch at a time, so corruption is found
+ * before someone switches to the damaged profile. Corrupt profiles are quarantined and reported in the log.
+ * The actual work is in {@link DatabaseManager#scrubItemPayloads}.
+ */
+public class PayloadScrubber {
+
+    private final PlayerProfiles plugin;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private TaskScheduler.Task task;
+
+    // Only touched by the job itself, which never runs twice at once
+    private String resumeAfter = "";
+    private int passScanned;
+    private int passCorrupted;
+
+    public PayloadScrubber(PlayerProfiles plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Schedules the repeating scrub job if it is enabled in the config.
+     */
+    public void start() {
+        if (!ConfigManager.isScrubberEnabled()) {
+            return;
+        }
+
+        long intervalTicks = ConfigManager.getScrubberIntervalMinutes() * 60L * 20L;
+        task = plugin.getTaskScheduler().runAsyncTimer(this::runScrub, intervalTicks, intervalTicks);
+    }
+
+    /**
+     * Cancels the repeating scrub job.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Checks one batch. MUST NOT be run on the main server thread.
+     */
+    private void runScrub() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            DatabaseManager.ScrubResult result = plugin.getDatabaseManager().scrubItemPayloads(
+                    resumeAfter, ConfigManager.getScrubberBatchSize());
+            for (UUID profileId : result.corrupted()) {
+                plugin.getLogger().severe("Profile " + profileId + " failed its item checksum and has been quarantined.");
+            }
+            passScanned += result.scanned();
+            passCorrupted += result.corrupted().size();
+            resumeAfter = result.resumeAfter();
+
+            if (resumeAfter.isEmpty()) {
+                if (passCorrupted > 0) {
+                    plugin.getLogger().warning("Item checksum scrub finished: " + passCorrupted + " of " + passScanned
+                            + " profiles are corrupt.");
+                }
+                passScanned = 0;
+                passCorrupted = 0;
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Item checksum scrub failed, will retry on the next run", e);
+        } finally {
+            running.set(false);
+        }
+    }
+}
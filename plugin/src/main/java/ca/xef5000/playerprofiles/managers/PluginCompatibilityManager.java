@@ -45,7 +45,7 @@ public class PluginCompatibilityManager {
         // Fire events with delays to ensure proper ordering
 
         // Step 1: Fire quit event for old identity (after 1 tick)
-        Bukkit.getScheduler().runTaskLater(plugin, () -> {
+        plugin.getTaskScheduler().runForPlayerLater(player, () -> {
             try {
                 // Temporarily change player info back to old identity for the event
                 nmsHandler.setPlayerInfoTemporarily(player, oldIdentity, () -> {
@@ -59,7 +59,7 @@ public class PluginCompatibilityManager {
         }, 1L);
 
         // Step 2: Fire join event for new identity (after 3 ticks)
-        Bukkit.getScheduler().runTaskLater(plugin, () -> {
+        plugin.getTaskScheduler().runForPlayerLater(player, () -> {
             try {
                 PlayerJoinEvent joinEvent = new PlayerJoinEvent(player, "§7" + newIdentity.name() + " joined the game");
                 Bukkit.getPluginManager().callEvent(joinEvent);
@@ -0,0 +1,73 @@
+package ca.xef5000.playerprofiles.managers;
+
+import ca.xef5000.playerprofiles.PlayerProfiles;
+import ca.xef5000.playerprofiles.api.services.TaskScheduler;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * Background job that moves profiles nobody has used in a while into the compressed archive table.
+ * Archived profiles are rehydrated by {@link DatabaseManager#loadProfile(java.util.UUID)} the next time they are loaded.
+ */
+public class ProfileArchiver {
+
+    private final PlayerProfiles plugin;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private TaskScheduler.Task task;
+
+    public ProfileArchiver(PlayerProfiles plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Schedules the repeating archive job if it is enabled in the config.
+     */
+    public void start() {
+        if (!ConfigManager.isArchiveEnabled()) {
+            return;
+        }
+
+        long intervalTicks = ConfigManager.getArchiveIntervalMinutes() * 60L * 20L;
+        task = plugin.getTaskScheduler().runAsyncTimer(this::runArchive, intervalTicks, intervalTicks);
+    }
+
+    /**
+     * Cancels the repeating archive job.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Archives one batch of cold profiles. MUST NOT be run on the main server thread.
+     */
+    private void runArchive() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            long start = System.nanoTime();
+            int archived = plugin.getDatabaseManager().archiveColdProfiles(
+                    ConfigManager.getArchiveAfterDays() * 24L * 60L * 60L * 1000L,
+                    ConfigManager.getArchiveBatchSize(),
+                    plugin.getProfileManager()::isProfileActive);
+
+            if (archived > 0) {
+                DatabaseManager.ArchiveStats stats = plugin.getDatabaseManager().getArchiveStats();
+                plugin.getLogger().info("Archived " + archived + " cold profiles in " + (System.nanoTime() - start) / 1_000_000L
+                        + "ms. Since startup: " + stats.archived() + " archived (avg " + String.format("%.1f", stats.averageArchiveMillis())
+                        + "ms), " + stats.rehydrated() + " rehydrated (avg " + String.format("%.1f", stats.averageRehydrateMillis()) + "ms).");
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Profile archiving failed, will retry on the next run", e);
+        } finally {
+            running.set(false);
+        }
+    }
+}
@@ -5,30 +5,37 @@ import ca.xef5000.playerprofiles.api.data.IdentityData;
 import ca.xef5000.playerprofiles.api.data.Profile;
 import ca.xef5000.playerprofiles.api.services.NMSService;
 import ca.xef5000.playerprofiles.api.utils.ProfileUsernameGenerator;
+import ca.xef5000.playerprofiles.data.PlayerSession;
 import ca.xef5000.playerprofiles.data.ProfileImpl;
 import ca.xef5000.playerprofiles.util.ProfileLimitUtil;
 import net.kyori.adventure.text.Component;
 import net.luckperms.api.LuckPerms;
 import net.luckperms.api.model.user.User;
 import net.luckperms.api.model.user.UserManager;
-import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
+import org.bukkit.Location;
 import org.bukkit.entity.Player;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
 import org.bukkit.potion.PotionEffect;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 
 public class ProfileManager {
 
+    // Where getArmorContents()[0] (boots) sits in a player inventory
+    private static final int ARMOR_FIRST_SLOT = 36;
+
     private final PlayerProfiles plugin;
-    private final Map<UUID, Profile> activeProfiles = new ConcurrentHashMap<>();
 
     public ProfileManager(PlayerProfiles plugin) {
         this.plugin = plugin;
@@ -40,8 +47,24 @@ public class ProfileManager {
      * @return The active CharacterProfile, or null if none is active.
      */
     public Profile getActiveProfile(Player player) {
-        UUID originalUUID = plugin.getIdentityManager().getOriginalIdentity(player).uuid();
-        return activeProfiles.get(originalUUID);
+        PlayerSession session = plugin.getIdentityManager().getSession(player);
+        return session != null ? session.getActiveProfile() : null;
+    }
+
+    /**
+     * Checks if a profile is currently the active profile of an online player.
+     * Safe to call from any thread.
+     * @param profileId The profile's UUID.
+     * @return true if some player has this profile active.
+     */
+    public boolean isProfileActive(UUID profileId) {
+        for (PlayerSession session : plugin.getIdentityManager().getSessions()) {
+            Profile profile = session.getActiveProfile();
+            if (profile != null && profile.getProfileId().equals(profileId)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -55,9 +78,13 @@ public class ProfileManager {
                         plugin.getDatabaseManager().loadProfile(profileId).thenAccept(profileOpt -> {
                             profileOpt.ifPresent(profile -> {
                                 // Switch to main thread to apply the profile
-                                Bukkit.getScheduler().runTask(plugin, () -> {
+                                plugin.getTaskScheduler().runForPlayer(player, () -> {
+                                    PlayerSession session = plugin.getIdentityManager().getSession(player);
+                                    if (session == null) {
+                                        return;
+                                    }
 
-                                    activeProfiles.put(player.getUniqueId(), profile);
+                                    session.setActiveProfile(profile);
                                     switchProfile(player, profileId).thenAccept(success -> {
                                         if (success) {
                                             plugin.getLogger().info("Auto-loaded profile '" + profile.getProfileName() + "' for " + player.getName());
@@ -79,15 +106,8 @@ public class ProfileManager {
      */
     public void onPlayerQuit(Player player) {
         try {
-            // Get the original UUID - this is the key used in activeProfiles
-            IdentityData originalIdentity = plugin.getIdentityManager().getOriginalIdentity(player);
-            if (originalIdentity == null) {
-                plugin.getLogger().warning("Could not get original identity for " + player.getName() + " during logout");
-                return;
-            }
-
-            UUID originalUUID = originalIdentity.uuid();
-            Profile activeProfile = activeProfiles.get(originalUUID);
+            PlayerSession session = plugin.getIdentityManager().getSession(player);
+            Profile activeProfile = session != null ? session.getActiveProfile() : null;
 
             if (activeProfile != null) {
                 // Save data on the main thread, then save to DB async
@@ -103,7 +123,7 @@ public class ProfileManager {
                             return null;
                         });
 
-                activeProfiles.remove(originalUUID);
+                session.setActiveProfile(null);
                 plugin.getLogger().info("Removed active profile for " + player.getName());
             } else {
                 plugin.getLogger().info("Player " + player.getName() + " logged out with no active profile.");
@@ -133,12 +153,30 @@ public class ProfileManager {
      * @return A CompletableFuture that completes when the switch is done.
      */
     public CompletableFuture<Boolean> switchProfile(Player player, UUID newProfileId) {
-        // This async setup is perfect.
-        IdentityData originalIdentity = plugin.getIdentityManager().getOriginalIdentity(player);
+        PlayerSession session = plugin.getIdentityManager().getSession(player);
+        // A second switch would capture and apply state while the first one is half done
+        if (session == null || !session.beginSwitch()) {
+            return CompletableFuture.completedFuture(false);
+        }
+
         return plugin.getDatabaseManager().loadProfile(newProfileId)
                 .thenCompose(profileOpt -> {
                     if (profileOpt.isEmpty()) return CompletableFuture.completedFuture(false);
                     Profile newProfile = profileOpt.get();
+                    // The switch is imminent, so decode items here on the async thread instead of on the main thread
+                    if (newProfile instanceof ProfileImpl p) {
+                        long decodeStart = System.nanoTime();
+                        p.decodeItems(runnable -> plugin.getTaskScheduler().runAsync(runnable));
+                        plugin.getLogger().fine("Decoded items for profile " + p.getProfileId() + " in "
+                                + (System.nanoTime() - decodeStart) / 1_000L + "us");
+                        // Its stored items are corrupt; applying it would hand out empty slots that then get saved
+                        if (p.isQuarantined()) {
+                            player.sendMessage(ChatColor.RED + "This profile's data is damaged and has been locked. Please contact an administrator.");
+                            return CompletableFuture.completedFuture(false);
+                        }
+                    }
+                    // Start loading the destination now, so it's ready by the time the player is teleported
+                    CompletableFuture<Long> destinationReady = preloadDestination(newProfile);
                     UserManager userManager = plugin.getLuckPermsApi().getUserManager();
                     String newUsername = newProfile.getProfileName().replace(" ", "_"); // Or your unique generator
 
@@ -147,27 +185,43 @@ public class ProfileManager {
                                     .thenApply(result -> newUser)
                             )
                             .thenApply(newUser -> {
-                                Bukkit.getScheduler().runTask(plugin, () -> {
-                                    performSwitch(player, originalIdentity, newProfile, newUser, newUsername);
+                                // Players without a profile yet are stuck in the selection screen, so they go first
+                                boolean urgent = session.getActiveProfile() == null;
+                                plugin.getSwitchScheduler().submit(player, urgent, () -> {
+                                    if (!player.isOnline()) {
+                                        session.endSwitch();
+                                        return;
+                                    }
+                                    performSwitch(player, session, newProfile, newUser, newUsername, destinationReady);
                                 });
                                 return true;
                             });
+                })
+                .whenComplete((success, error) -> {
+                    // On success, performSwitch ends the switch once the profile is applied
+                    if (error != null || !success) {
+                        session.endSwitch();
+                    }
                 });
     }
 
 
     /**
      * This helper method contains the logic that MUST run on the main server thread.
+     * It is run through the {@link SwitchScheduler}, and queues the apply phase of a full relog there too.
      */
-    private void performSwitch(Player player, IdentityData originalIdentity, Profile newProfile, User newLuckPermsUser, String newUsername) {
+    private void performSwitch(Player player, PlayerSession session, Profile newProfile, User newLuckPermsUser, String newUsername,
+                               CompletableFuture<Long> destinationReady) {
+        IdentityData originalIdentity = session.getOriginalIdentity();
+        long switchStart = System.nanoTime();
         try {
             NMSService nmsHandler = plugin.getNmsHandler();
+            boolean softSwitch = canSoftSwitch(player, newProfile);
 
-            // 1. Save state of the old profile.
-            Profile oldProfile = getActiveProfile(player);
+            // 1. Capture state of the old profile. It is written to the database in step 5.
+            Profile oldProfile = session.getActiveProfile();
             if (oldProfile != null) {
                 savePlayerStateToProfile(player, oldProfile);
-                plugin.getDatabaseManager().saveProfile(oldProfile);
             }
 
             // 2. Preserve volatile state before the respawn.
@@ -179,7 +233,8 @@ public class ProfileManager {
                     newUsername,
                     originalIdentity.skin()
             );
-            nmsHandler.applyIdentity(player, newIdentity);
+            // Through the IdentityManager, so the player is re-indexed under the new UUID
+            plugin.getIdentityManager().applyIdentity(player, newIdentity);
 
             // 4. Inject the new LuckPerms permissible.
             if (plugin.getLuckPermsInjector() != null) {
@@ -187,30 +242,77 @@ public class ProfileManager {
             }
 
             // 5. Update your internal state.
-            UUID originalUUID = originalIdentity.uuid();
-            activeProfiles.put(originalUUID, newProfile);
-            plugin.getDatabaseManager().setPlayerActiveProfile(originalUUID, newProfile.getProfileId());
+            UUID originalUUID = session.getOriginalUUID();
+            session.setActiveProfile(newProfile);
+            session.setLuckPermsUser(newLuckPermsUser);
+            if (oldProfile != null) {
+                // The old profile's save and the new pointer go out in one async transaction
+                plugin.getDatabaseManager().saveProfileAndSetActive(oldProfile, originalUUID, newProfile.getProfileId());
+            } else {
+                plugin.getDatabaseManager().setPlayerActiveProfile(originalUUID, newProfile.getProfileId());
+            }
+
+            if (softSwitch) {
+                // 6. The entity stays as it is: apply the data right away and resend what the client shows.
+                try {
+                    applyProfileToPlayer(newProfile, player, destinationReady);
+                    player.addPotionEffects(effects);
+                    nmsHandler.refreshClientState(player);
+                } finally {
+                    session.endSwitch();
+                }
+                plugin.getLogger().info("Successfully switched identity for " + originalIdentity.name() + " in place.");
+                plugin.getLogger().fine("Soft switch for " + player.getName() + " took "
+                        + (System.nanoTime() - switchStart) / 1_000L + "us");
+                return;
+            }
 
             // 6. Trigger the server-side respawn to force a full refresh.
             // This must happen AFTER all other state changes.
             nmsHandler.relogPlayer(player);
-
-            // 7. Re-apply data on the next tick, after the respawn is complete.
-            Bukkit.getScheduler().runTaskLater(plugin, () -> {
-                if (player.isOnline()) {
-                    applyProfileToPlayer(newProfile, player);
-                    player.addPotionEffects(effects);
+            long relogNanos = System.nanoTime() - switchStart;
+
+            // 7. Re-apply data on a later tick, after the respawn is complete.
+            plugin.getSwitchScheduler().submit(player, oldProfile == null, () -> {
+                long applyStart = System.nanoTime();
+                try {
+                    if (player.isOnline()) {
+                        applyProfileToPlayer(newProfile, player, destinationReady);
+                        player.addPotionEffects(effects);
+                    }
+                } finally {
+                    session.endSwitch();
                 }
-            }, 1L);
+                // Main thread time only, not the tick waited in between
+                plugin.getLogger().fine("Relog switch for " + player.getName() + " took "
+                        + (relogNanos + System.nanoTime() - applyStart) / 1_000L + "us");
+            });
 
             plugin.getLogger().info("Successfully switched identity for " + originalIdentity.name() + ". Server-side respawn complete.");
 
         } catch (Exception e) {
             plugin.getLogger().severe("Error during performSwitch: " + e.getMessage());
             e.printStackTrace();
+            session.endSwitch();
         }
     }
 
+    /**
+     * Whether a switch can skip the server-side respawn. It can as long as the player is alive, not riding
+     * or carrying anything and not asleep, and the new profile's location is in the world they are already in.
+     * A world change needs the respawn for the client to load the new dimension.
+     */
+    private boolean canSoftSwitch(Player player, Profile newProfile) {
+        if (!ConfigManager.isSoftSwitchEnabled()) {
+            return false;
+        }
+        if (player.isDead() || player.isSleeping() || player.isInsideVehicle() || !player.getPassengers().isEmpty()) {
+            return false;
+        }
+        Location target = newProfile instanceof ProfileImpl p ? p.getLocation() : null;
+        return target == null || target.getWorld() == null || target.getWorld().equals(player.getWorld());
+    }
+
     /**
      * Handles the reflection and NMS calls to inject a new LuckPerms permissible.
      */
@@ -248,17 +350,81 @@ public class ProfileManager {
         }
     }
 
+    /**
+     * Starts loading the chunk of a profile's saved location in the background. Safe to call from any thread.
+     * @return A future with how long the load took in nanoseconds, or null if the profile has no location.
+     */
+    private CompletableFuture<Long> preloadDestination(Profile profile) {
+        Location target = profile instanceof ProfileImpl p ? p.getLocation() : null;
+        if (target == null || target.getWorld() == null) {
+            return null;
+        }
+
+        long preloadStart = System.nanoTime();
+        return target.getWorld().getChunkAtAsync(target).thenApply(chunk -> System.nanoTime() - preloadStart);
+    }
+
+    /**
+     * Teleports the player once the destination chunk has been preloaded, so the main thread never waits on
+     * a synchronous chunk load. If the preload takes longer than the configured timeout, Paper's async teleport
+     * finishes the job instead.
+     * MUST be run on the main server thread.
+     * @param destinationReady The future from {@link #preloadDestination(Profile)}, or null to teleport right away.
+     */
+    private void teleportWhenReady(Player player, Location location, CompletableFuture<Long> destinationReady) {
+        if (destinationReady == null) {
+            teleport(player, location);
+            return;
+        }
+
+        if (destinationReady.isDone() && !destinationReady.isCompletedExceptionally()) {
+            // The whole load happened while the switch was busy with other things
+            plugin.getLogger().fine("Destination chunk for " + player.getName() + " was preloaded in "
+                    + destinationReady.join() / 1_000L + "us, none of it on the main thread");
+            teleport(player, location);
+            return;
+        }
+
+        long waitStart = System.nanoTime();
+        destinationReady.completeOnTimeout(-1L, ConfigManager.getChunkPreloadTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((loadNanos, error) -> plugin.getTaskScheduler().runForPlayer(player, () -> {
+                    if (!player.isOnline()) {
+                        return;
+                    }
+                    long waitedMicros = (System.nanoTime() - waitStart) / 1_000L;
+                    if (error != null || loadNanos < 0) {
+                        plugin.getLogger().fine("Destination chunk for " + player.getName() + " was not ready after "
+                                + waitedMicros + "us, teleporting asynchronously");
+                        player.teleportAsync(location);
+                    } else {
+                        plugin.getLogger().fine("Destination chunk for " + player.getName() + " was preloaded in "
+                                + loadNanos / 1_000L + "us, the teleport waited " + waitedMicros + "us of it");
+                        teleport(player, location);
+                    }
+                }));
+    }
+
+    /**
+     * Teleports the player. On Folia the destination may belong to another region, so the teleport is always async there.
+     */
+    private void teleport(Player player, Location location) {
+        if (plugin.getTaskScheduler().isRegionThreaded()) {
+            player.teleportAsync(location);
+        } else {
+            player.teleport(location);
+        }
+    }
+
     /**
      * Takes a profile's data and applies it to a live player.
      * MUST be run on the main server thread.
+     * @param destinationReady The preload of the profile's location, or null if there is none.
      */
-    private void applyProfileToPlayer(Profile profile, Player player) {
+    private void applyProfileToPlayer(Profile profile, Player player, CompletableFuture<Long> destinationReady) {
         if (!(profile instanceof ProfileImpl p)) return;
 
         try {
-            // Clear player's current state to prevent item duplication
-            player.getInventory().clear();
-            player.getEnderChest().clear();
+            // Reset the player's current state. Items are not cleared, they are diffed against the profile's below.
             player.setTotalExperience(0);
             player.setHealth(20.0);
             player.setFoodLevel(20);
@@ -266,10 +432,27 @@ public class ProfileManager {
                 player.removePotionEffect(effect.getType());
             }
 
+            // Restore the full entity snapshot first; the columns below then set items, effects and the rest
+            if (p.getStateSnapshot() != null) {
+                try {
+                    plugin.getNmsHandler().restorePlayerState(player, p.getStateSnapshot());
+                } catch (Exception e) {
+                    plugin.getLogger().log(Level.WARNING, "Could not restore state snapshot for " + player.getName(), e);
+                }
+            }
+
             // Apply new state
-            if (p.getInventoryContents() != null) player.getInventory().setContents(p.getInventoryContents());
-            if (p.getArmorContents() != null) player.getInventory().setArmorContents(p.getArmorContents());
-            if (p.getLocation() != null) player.teleport(p.getLocation());
+            // Only the slots that differ are set, so items both profiles share are neither copied nor resent.
+            // A profile without stored items leaves the player with empty inventories, as clearing them used to.
+            PlayerInventory inventory = player.getInventory();
+            int touched = applyContentsDiff(inventory, orEmpty(p.getInventoryContents()), 0, inventory.getSize());
+            if (p.getArmorContents() != null) {
+                touched += applyContentsDiff(inventory, p.getArmorContents(), ARMOR_FIRST_SLOT, p.getArmorContents().length);
+            }
+            touched += applyContentsDiff(player.getEnderChest(), orEmpty(p.getEnderChestContents()), 0, player.getEnderChest().getSize());
+            plugin.getLogger().fine("Applied items for " + player.getName() + ", " + touched + " slots changed");
+
+            if (p.getLocation() != null) teleportWhenReady(player, p.getLocation(), destinationReady);
             player.setHealth(p.getHealth());
             player.setFoodLevel(p.getFoodLevel());
             player.setTotalExperience(p.getTotalExperience());
@@ -283,6 +466,40 @@ public class ProfileManager {
         }
     }
 
+    private static ItemStack[] orEmpty(ItemStack[] contents) {
+        return contents != null ? contents : new ItemStack[0];
+    }
+
+    /**
+     * Sets the inventory slots whose item differs from the target, leaving matching slots alone.
+     * Slots past the end of the target are emptied.
+     * @param target The wanted items, in slot order.
+     * @param firstSlot The inventory slot the first target item goes in.
+     * @param slotCount How many slots to compare.
+     * @return How many slots were changed.
+     */
+    private static int applyContentsDiff(Inventory inventory, ItemStack[] target, int firstSlot, int slotCount) {
+        int touched = 0;
+        for (int i = 0; i < slotCount; i++) {
+            ItemStack wanted = i < target.length ? target[i] : null;
+            ItemStack current = inventory.getItem(firstSlot + i);
+            if (!isSameStack(current, wanted)) {
+                inventory.setItem(firstSlot + i, wanted);
+                touched++;
+            }
+        }
+        return touched;
+    }
+
+    private static boolean isSameStack(ItemStack a, ItemStack b) {
+        boolean aEmpty = a == null || a.getType().isAir();
+        boolean bEmpty = b == null || b.getType().isAir();
+        if (aEmpty || bEmpty) {
+            return aEmpty == bEmpty;
+        }
+        return a.getAmount() == b.getAmount() && a.isSimilar(b);
+    }
+
     /**
      * Takes a live player's state and saves it into a profile object.
      * This only updates the Java object; it does not write to the database.
@@ -293,6 +510,7 @@ public class ProfileManager {
         try {
             p.setInventoryContents(player.getInventory().getContents());
             p.setArmorContents(player.getInventory().getArmorContents());
+            p.setEnderChestContents(player.getEnderChest().getContents());
             p.setLocation(player.getLocation());
             p.setHealth(player.getHealth());
             p.setFoodLevel(player.getFoodLevel());
@@ -303,6 +521,13 @@ public class ProfileManager {
             plugin.getLogger().severe("Error saving player state to profile for " + player.getName() + ": " + e.getMessage());
             e.printStackTrace();
         }
+
+        // One NBT pass picks up everything the getters above miss (saturation, exhaustion, XP progress, attributes, ...)
+        try {
+            p.setStateSnapshot(plugin.getNmsHandler().capturePlayerState(player));
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Could not capture state snapshot for " + player.getName(), e);
+        }
     }
 
     /**
@@ -0,0 +1,92 @@
+package ca.xef5000.playerprofiles.managers;
+
+import ca.xef5000.playerprofiles.PlayerProfiles;
+import ca.xef5000.playerprofiles.api.services.TaskScheduler;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * Background job that purges tombstoned profiles, orphaned rows and unused item blobs.
+ * The actual SQL lives in {@link DatabaseManager#sweep(int, long)}; this class only schedules it and reports counts.
+ */
+public class ProfileSweeper {
+
+    private final PlayerProfiles plugin;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private TaskScheduler.Task task;
+
+    private volatile DatabaseManager.SweepResult lastResult;
+
+    public ProfileSweeper(PlayerProfiles plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Schedules the repeating sweep if it is enabled in the config.
+     */
+    public void start() {
+        if (!ConfigManager.isSweeperEnabled()) {
+            return;
+        }
+
+        long intervalTicks = ConfigManager.getSweeperIntervalMinutes() * 60L * 20L;
+        // First run shortly after startup so orphans left by older versions are cleaned up early
+        task = plugin.getTaskScheduler().runAsyncTimer(this::runSweep, 20L * 60L, intervalTicks);
+    }
+
+    /**
+     * Cancels the repeating sweep.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Runs one sweep. MUST NOT be run on the main server thread.
+     */
+    private void runSweep() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            long start = System.nanoTime();
+            DatabaseManager databaseManager = plugin.getDatabaseManager();
+            DatabaseManager.SweepResult result = databaseManager.sweep(
+                    ConfigManager.getSweeperBatchSize(),
+                    ConfigManager.getSweeperTombstoneGraceHours() * 60L * 60L * 1000L);
+            int itemBlobs = databaseManager.collectItemBlobs(ConfigManager.getSweeperBatchSize());
+            databaseManager.incrementalVacuum(ConfigManager.getSweeperVacuumPages());
+            lastResult = result;
+            if (itemBlobs > 0) {
+                plugin.getLogger().info("Removed " + itemBlobs + " unused item blobs.");
+            }
+
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+            if (result.total() > 0) {
+                plugin.getLogger().info("Sweep finished in " + elapsedMillis + "ms: purged " + result.purgedProfiles()
+                        + " deleted profiles, " + result.orphanedProfileData() + " orphaned profile data rows, "
+                        + result.orphanedCustomData() + " orphaned custom data rows, cleared "
+                        + result.clearedActivePointers() + " dangling active profiles.");
+            } else {
+                plugin.getLogger().fine("Sweep finished in " + elapsedMillis + "ms, nothing to clean up.");
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Profile sweep failed, will retry on the next run", e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * @return The counts from the last completed sweep, or null if none has run yet.
+     */
+    public DatabaseManager.SweepResult getLastResult() {
+        return lastResult;
+    }
+}
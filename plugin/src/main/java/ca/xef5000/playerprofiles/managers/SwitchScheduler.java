@@ -0,0 +1,139 @@
+package ca.xef5000.playerprofiles.managers;
+
+import ca.xef5000.playerprofiles.PlayerProfiles;
+import ca.xef5000.playerprofiles.api.services.TaskScheduler;
+import org.bukkit.entity.Player;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+
+/**
+ * Runs the main-thread phases of profile switches under a per-tick time budget, so a wave of switches
+ * after a restart or an event is spread over several ticks instead of freezing the server.
+ * Urgent work, such as for players who can't play until they have a profile, is run before everything else.
+ * Work can be submitted from any thread. It always runs on the main thread, at the earliest on the next tick.
+ * On Folia there is no single main thread to protect, so work goes straight to each player's own scheduler
+ * and switches spread over the region threads instead.
+ */
+public class SwitchScheduler {
+
+    // How often the queue wait statistics are logged, in ticks
+    private static final long STATS_INTERVAL_TICKS = 20L * 60L;
+
+    private final PlayerProfiles plugin;
+    private final Queue<QueuedTask> urgentQueue = new ConcurrentLinkedQueue<>();
+    private final Queue<QueuedTask> normalQueue = new ConcurrentLinkedQueue<>();
+    private TaskScheduler.Task task;
+
+    // Only touched on the main thread
+    private long ticks;
+    private long ranSinceStats;
+    private long waitNanosSinceStats;
+    private long maxWaitNanosSinceStats;
+
+    private record QueuedTask(Runnable work, long queuedAt) {}
+
+    public SwitchScheduler(PlayerProfiles plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Starts draining the queues every tick.
+     */
+    public void start() {
+        if (plugin.getTaskScheduler().isRegionThreaded()) {
+            return;
+        }
+        task = plugin.getTaskScheduler().runGlobalTimer(this::tick, 1L, 1L);
+    }
+
+    /**
+     * Stops draining the queues. Work still queued is dropped.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        urgentQueue.clear();
+        normalQueue.clear();
+    }
+
+    /**
+     * Queues main-thread work. Safe to call from any thread.
+     * @param player The player the work is for.
+     * @param urgent Whether the work is for a player who is blocked until it runs, and should go first.
+     * @param work The work to run.
+     */
+    public void submit(Player player, boolean urgent, Runnable work) {
+        if (plugin.getTaskScheduler().isRegionThreaded()) {
+            plugin.getTaskScheduler().runForPlayer(player, work);
+            return;
+        }
+
+        QueuedTask queued = new QueuedTask(work, System.nanoTime());
+        if (urgent) {
+            urgentQueue.add(queued);
+        } else {
+            normalQueue.add(queued);
+        }
+    }
+
+    /**
+     * @return How many tasks are waiting to run.
+     */
+    public int getQueuedCount() {
+        return urgentQueue.size() + normalQueue.size();
+    }
+
+    private void tick() {
+        long tickStart = System.nanoTime();
+        long deadline = tickStart + ConfigManager.getSwitchTickBudgetMillis() * 1_000_000L;
+
+        // Only run what was queued before this tick, so work queued by a task waits for the next one
+        int urgentLeft = urgentQueue.size();
+        int normalLeft = normalQueue.size();
+        boolean ranAny = false;
+
+        while (urgentLeft > 0 || normalLeft > 0) {
+            // At least one task per tick, so the queue always moves even if the budget is tiny
+            if (ranAny && System.nanoTime() >= deadline) {
+                break;
+            }
+
+            QueuedTask next;
+            if (urgentLeft > 0) {
+                next = urgentQueue.poll();
+                urgentLeft--;
+            } else {
+                next = normalQueue.poll();
+                normalLeft--;
+            }
+            if (next == null) {
+                continue;
+            }
+
+            long startedAt = System.nanoTime();
+            long waitNanos = startedAt - next.queuedAt();
+            ranSinceStats++;
+            waitNanosSinceStats += waitNanos;
+            maxWaitNanosSinceStats = Math.max(maxWaitNanosSinceStats, waitNanos);
+            try {
+                next.work().run();
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.SEVERE, "A queued profile switch task failed", e);
+            }
+            ranAny = true;
+        }
+
+        if (++ticks % STATS_INTERVAL_TICKS == 0 && ranSinceStats > 0) {
+            plugin.getLogger().info("Ran " + ranSinceStats + " profile switch tasks in the last minute. Queue wait: average "
+                    + waitNanosSinceStats / ranSinceStats / 1_000_000L + "ms, max " + maxWaitNanosSinceStats / 1_000_000L
+                    + "ms. " + getQueuedCount() + " still queued.");
+            ranSinceStats = 0;
+            waitNanosSinceStats = 0;
+            maxWaitNanosSinceStats = 0;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ca.xef5000.playerprofiles.scheduler;
+
+import ca.xef5000.playerprofiles.api.services.TaskScheduler;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link TaskScheduler} for Folia, where each region of the world ticks on its own thread and the
+ * BukkitScheduler is not available.
+ */
+public class FoliaTaskScheduler implements TaskScheduler {
+
+    // Folia's delayed and repeating tasks need a delay of at least one tick
+    private static final long MIN_DELAY_TICKS = 1L;
+    private static final long MILLIS_PER_TICK = 50L;
+
+    private final Plugin plugin;
+
+    public FoliaTaskScheduler(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * @return Whether the server is running Folia.
+     */
+    public static boolean isSupported() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isRegionThreaded() {
+        return true;
+    }
+
+    @Override
+    public void runForPlayer(Player player, Runnable task) {
+        player.getScheduler().run(plugin, scheduled -> task.run(), null);
+    }
+
+    @Override
+    public void runForPlayerLater(Player player, Runnable task, long delayTicks) {
+        player.getScheduler().runDelayed(plugin, scheduled -> task.run(), null, Math.max(MIN_DELAY_TICKS, delayTicks));
+    }
+
+    @Override
+    public void runAtLocation(Location location, Runnable task) {
+        Bukkit.getRegionScheduler().execute(plugin, location, task);
+    }
+
+    @Override
+    public void runGlobal(Runnable task) {
+        Bukkit.getGlobalRegionScheduler().execute(plugin, task);
+    }
+
+    @Override
+    public void runGlobalLater(Runnable task, long delayTicks) {
+        Bukkit.getGlobalRegionScheduler().runDelayed(plugin, scheduled -> task.run(), Math.max(MIN_DELAY_TICKS, delayTicks));
+    }
+
+    @Override
+    public Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+        return Bukkit.getGlobalRegionScheduler().runAtFixedRate(plugin, scheduled -> task.run(),
+                Math.max(MIN_DELAY_TICKS, delayTicks), Math.max(MIN_DELAY_TICKS, periodTicks))::cancel;
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        Bukkit.getAsyncScheduler().runNow(plugin, scheduled -> task.run());
+    }
+
+    @Override
+    public Task runAsyncTimer(Runnable task, long delayTicks, long periodTicks) {
+        return Bukkit.getAsyncScheduler().runAtFixedRate(plugin, scheduled -> task.run(),
+                delayTicks * MILLIS_PER_TICK, Math.max(MIN_DELAY_TICKS, periodTicks) * MILLIS_PER_TICK, TimeUnit.MILLISECONDS)::cancel;
+    }
+
+    @Override
+    public void cancelAll() {
+        Bukkit.getGlobalRegionScheduler().cancelTasks(plugin);
+        Bukkit.getAsyncScheduler().cancelTasks(plugin);
+    }
+}
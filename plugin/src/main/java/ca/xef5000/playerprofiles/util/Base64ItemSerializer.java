@@ -4,9 +4,11 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.util.io.BukkitObjectInputStream;
 import org.bukkit.util.io.BukkitObjectOutputStream;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
 public class Base64ItemSerializer {
@@ -23,8 +25,10 @@ public class Base64ItemSerializer {
         }
 
         try {
+            // Encode to Base64 while writing, instead of copying the raw bytes out and encoding them afterwards
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            BukkitObjectOutputStream dataOutput = new BukkitObjectOutputStream(outputStream);
+            OutputStream base64Output = Base64.getEncoder().wrap(outputStream);
+            BukkitObjectOutputStream dataOutput = new BukkitObjectOutputStream(base64Output);
 
             // Write the length of the inventory
             dataOutput.writeInt(items.length);
@@ -34,8 +38,9 @@ public class Base64ItemSerializer {
                 dataOutput.writeObject(item);
             }
 
+            // Closing also flushes the Base64 padding
             dataOutput.close();
-            return Base64.getEncoder().encodeToString(outputStream.toByteArray());
+            return outputStream.toString(StandardCharsets.US_ASCII);
         } catch (IOException e) {
             System.err.println("Failed to serialize items: " + e.getMessage());
             e.printStackTrace();
@@ -56,9 +61,38 @@ public class Base64ItemSerializer {
         }
 
         try {
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(Base64.getDecoder().decode(data));
-            BukkitObjectInputStream dataInput = new BukkitObjectInputStream(inputStream);
+            return deserializeOrThrow(data);
+        } catch (IOException | ClassNotFoundException | IllegalArgumentException e) {
+            System.err.println("Failed to deserialize items: " + e.getMessage());
+            e.printStackTrace();
+            return new ItemStack[0];
+        }
+    }
 
+    /**
+     * Deserializes a Base64 string like {@link #deserialize(String)}, but fails instead of returning an empty array,
+     * for callers that must not mistake unreadable data for an empty inventory.
+     *
+     * @param data The Base64 string to deserialize.
+     * @return An array of ItemStacks.
+     */
+    public static ItemStack[] deserializeOrThrow(String data) throws IOException, ClassNotFoundException {
+        if (data == null || data.isEmpty()) {
+            return new ItemStack[0];
+        }
+        // Decode straight from the string; neither the Base64 bytes nor the decoded bytes are copied out in full
+        return deserialize(Base64.getDecoder().wrap(new AsciiInputStream(data)));
+    }
+
+    /**
+     * Deserializes items from a stream of raw (already Base64-decoded) serialized bytes.
+     * The stream is read to the end of the items and closed.
+     *
+     * @param inputStream The serialized items.
+     * @return An array of ItemStacks.
+     */
+    public static ItemStack[] deserialize(InputStream inputStream) throws IOException, ClassNotFoundException {
+        try (BukkitObjectInputStream dataInput = new BukkitObjectInputStream(inputStream)) {
             // Read the length of the inventory
             int length = dataInput.readInt();
             ItemStack[] items = new ItemStack[length];
@@ -67,13 +101,45 @@ public class Base64ItemSerializer {
             for (int i = 0; i < length; i++) {
                 items[i] = (ItemStack) dataInput.readObject();
             }
-
-            dataInput.close();
             return items;
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Failed to deserialize items: " + e.getMessage());
-            e.printStackTrace();
-            return new ItemStack[0];
+        }
+    }
+
+    /**
+     * Reads the characters of an ASCII string as bytes, without copying the string.
+     */
+    private static class AsciiInputStream extends InputStream {
+        private final String data;
+        private int position;
+
+        AsciiInputStream(String data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return position < data.length() ? data.charAt(position++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            int remaining = data.length() - position;
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = Math.min(length, remaining);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (byte) data.charAt(position++);
+            }
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return data.length() - position;
         }
     }
 }
@@ -0,0 +1,73 @@
+package ca.xef5000.playerprofiles.util;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of decoded item blobs, shared by every profile load.
+ * Identical kits decode once and are handed out as clones afterwards, since ItemStacks are mutable.
+ */
+public class ItemBlobCache {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Map<String, ItemStack> items;
+
+    public ItemBlobCache(int capacity) {
+        this.items = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ItemStack> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Gets a copy of a cached item.
+     * @param hash The blob hash.
+     * @return A clone of the cached item, or null if it is not cached.
+     */
+    public synchronized ItemStack get(String hash) {
+        ItemStack item = items.get(hash);
+        return item != null ? item.clone() : null;
+    }
+
+    /**
+     * Caches a copy of an item under its blob hash.
+     */
+    public synchronized void put(String hash, ItemStack item) {
+        items.put(hash, item.clone());
+    }
+
+    /**
+     * Drops a blob that was removed from the database.
+     */
+    public synchronized void invalidate(String hash) {
+        items.remove(hash);
+    }
+
+    /**
+     * Computes the content address of a serialized item: the first 128 bits of its SHA-256, in hex.
+     * @param serialized The serialized item.
+     * @return A 32 character hex string.
+     */
+    public static String hash(String serialized) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(serialized.getBytes(StandardCharsets.UTF_8));
+            char[] hex = new char[32];
+            for (int i = 0; i < 16; i++) {
+                hex[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+                hex[i * 2 + 1] = HEX[digest[i] & 0xF];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java runtime is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
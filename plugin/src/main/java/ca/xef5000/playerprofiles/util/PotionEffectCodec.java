@@ -0,0 +1,165 @@
+package ca.xef5000.playerprofiles.util;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary format for a profile's potion effects.
+ * Effect types are written once per payload as namespaced keys in a small table, and each effect refers to its type
+ * by index in that table. Amplifier and duration are zigzag varints, so the usual small values take one or two bytes.
+ * Keys stay stable across server versions, unlike the internal registry ids or the fields Gson would reflect over.
+ */
+public class PotionEffectCodec {
+
+    /**
+     * Prefix of encoded payloads in the potion_effects column. Anything else is legacy Gson JSON.
+     */
+    public static final String PREFIX = "bin:";
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int FLAG_AMBIENT = 1;
+    private static final int FLAG_PARTICLES = 1 << 1;
+    private static final int FLAG_ICON = 1 << 2;
+
+    private PotionEffectCodec() {}
+
+    /**
+     * Encodes potion effects for the potion_effects column.
+     * @param effects The effects to encode.
+     * @return The prefixed, Base64 encoded payload.
+     */
+    public static String encode(Collection<PotionEffect> effects) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+
+            // Type table: each distinct key once, in first-seen order
+            Map<String, Integer> typeIndexes = new LinkedHashMap<>();
+            for (PotionEffect effect : effects) {
+                typeIndexes.putIfAbsent(effect.getType().getKey().toString(), typeIndexes.size());
+            }
+            writeVarInt(out, typeIndexes.size());
+            for (String key : typeIndexes.keySet()) {
+                out.writeUTF(key);
+            }
+
+            writeVarInt(out, effects.size());
+            for (PotionEffect effect : effects) {
+                writeVarInt(out, typeIndexes.get(effect.getType().getKey().toString()));
+                writeVarInt(out, zigzag(effect.getAmplifier()));
+                // Infinite effects have a duration of -1
+                writeVarInt(out, zigzag(effect.getDuration()));
+                int flags = (effect.isAmbient() ? FLAG_AMBIENT : 0)
+                        | (effect.hasParticles() ? FLAG_PARTICLES : 0)
+                        | (effect.hasIcon() ? FLAG_ICON : 0);
+                out.writeByte(flags);
+            }
+        } catch (IOException e) {
+            // ByteArrayOutputStream never throws
+            throw new IllegalStateException(e);
+        }
+        return PREFIX + Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Decodes a payload written by {@link #encode(Collection)}.
+     * Effects whose type no longer exists on this server are skipped.
+     * @param payload The prefixed payload.
+     * @return The decoded effects.
+     */
+    public static List<PotionEffect> decode(String payload) throws IOException {
+        if (!payload.startsWith(PREFIX)) {
+            throw new IOException("Not an encoded potion effect payload");
+        }
+
+        byte[] data;
+        try {
+            data = Base64.getDecoder().decode(payload.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid Base64 in potion effect payload", e);
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported potion effect format version " + version);
+            }
+
+            int typeCount = readCount(in, "type");
+            PotionEffectType[] types = new PotionEffectType[typeCount];
+            for (int i = 0; i < typeCount; i++) {
+                NamespacedKey key = NamespacedKey.fromString(in.readUTF());
+                types[i] = key != null ? PotionEffectType.getByKey(key) : null;
+            }
+
+            int effectCount = readCount(in, "effect");
+            List<PotionEffect> effects = new ArrayList<>(effectCount);
+            for (int i = 0; i < effectCount; i++) {
+                int typeIndex = readVarInt(in);
+                int amplifier = unzigzag(readVarInt(in));
+                int duration = unzigzag(readVarInt(in));
+                int flags = in.readUnsignedByte();
+                if (typeIndex < 0 || typeIndex >= typeCount) {
+                    throw new IOException("Potion effect type index " + typeIndex + " out of range");
+                }
+                if (types[typeIndex] == null) {
+                    continue;
+                }
+                effects.add(new PotionEffect(types[typeIndex], duration, amplifier,
+                        (flags & FLAG_AMBIENT) != 0, (flags & FLAG_PARTICLES) != 0, (flags & FLAG_ICON) != 0));
+            }
+            return effects;
+        }
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    // Every entry takes at least one byte, so a count larger than what's left is corrupt and must not size an array
+    private static int readCount(DataInputStream in, String what) throws IOException {
+        int count = readVarInt(in);
+        if (count < 0 || count > in.available()) {
+            throw new IOException("Potion effect " + what + " count " + count + " out of range");
+        }
+        return count;
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("VarInt is too long");
+    }
+}
@@ -0,0 +1,143 @@
+package ca.xef5000.playerprofiles.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Packs the rows of an archived profile into one compressed payload.
+ * Columns are stored by name with a small type tag, so payloads written before a schema change
+ * can still be restored into the columns that exist at that point.
+ */
+public class ProfileArchiveCodec {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_DOUBLE = 3;
+    private static final byte TYPE_BYTES = 4;
+
+    /**
+     * The decoded contents of an archive payload.
+     * @param columns The pc_profile_data row, by column name (without profile_id).
+     * @param customData The pc_custom_data rows as {namespace, key, value} triples.
+     */
+    public record ArchivedProfile(Map<String, Object> columns, List<String[]> customData) {}
+
+    private ProfileArchiveCodec() {}
+
+    /**
+     * Encodes and compresses an archived profile.
+     * @param profile The rows to archive.
+     * @return The compressed payload.
+     */
+    public static byte[] encode(ArchivedProfile profile) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeByte(FORMAT_VERSION);
+
+            out.writeInt(profile.columns().size());
+            for (Map.Entry<String, Object> column : profile.columns().entrySet()) {
+                out.writeUTF(column.getKey());
+                writeValue(out, column.getValue());
+            }
+
+            out.writeInt(profile.customData().size());
+            for (String[] row : profile.customData()) {
+                out.writeUTF(row[0]);
+                out.writeUTF(row[1]);
+                writeValue(out, row[2]);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decompresses and decodes a payload written by {@link #encode(ArchivedProfile)}.
+     * @param payload The compressed payload.
+     * @return The archived rows.
+     */
+    public static ArchivedProfile decode(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(payload)))) {
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported archive format version " + version);
+            }
+
+            int columnCount = in.readInt();
+            Map<String, Object> columns = new LinkedHashMap<>();
+            for (int i = 0; i < columnCount; i++) {
+                String name = in.readUTF();
+                columns.put(name, readValue(in));
+            }
+
+            int customCount = in.readInt();
+            List<String[]> customData = new ArrayList<>(customCount);
+            for (int i = 0; i < customCount; i++) {
+                String namespace = in.readUTF();
+                String key = in.readUTF();
+                Object value = readValue(in);
+                customData.add(new String[]{namespace, key, value != null ? value.toString() : null});
+            }
+
+            return new ArchivedProfile(columns, customData);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof byte[] data) {
+            out.writeByte(TYPE_BYTES);
+            out.writeInt(data.length);
+            out.write(data);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Number number) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(number.doubleValue());
+        } else {
+            // writeUTF is limited to 64KB, and serialized inventories can be much larger
+            byte[] data = value.toString().getBytes(StandardCharsets.UTF_8);
+            out.writeByte(TYPE_STRING);
+            out.writeInt(data.length);
+            out.write(data);
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING: {
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                return new String(data, StandardCharsets.UTF_8);
+            }
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_BYTES: {
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                return data;
+            }
+            default:
+                throw new IOException("Unknown value type " + type + " in archive payload");
+        }
+    }
+}
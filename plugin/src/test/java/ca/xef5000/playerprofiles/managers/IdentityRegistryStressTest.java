@@ -0,0 +1,181 @@
+package ca.xef5000.playerprofiles.managers;
+
+import ca.xef5000.playerprofiles.api.data.IdentityData;
+import ca.xef5000.playerprofiles.data.PlayerSession;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs logins, switches and quits for many players at once and checks that both indexes stay consistent.
+ */
+class IdentityRegistryStressTest {
+
+    private static final int PLAYERS = 64;
+    private static final int ROUNDS = 200;
+    private static final int SWITCHES_PER_ROUND = 5;
+
+    @Test
+    void loginSwitchQuitKeepsIndexesConsistent() throws Exception {
+        IdentityRegistry registry = new IdentityRegistry();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<UUID> everyUUID = new ArrayList<>();
+        List<Future<?>> players = new ArrayList<>();
+
+        for (int i = 0; i < PLAYERS; i++) {
+            UUID originalUUID = UUID.randomUUID();
+            List<UUID> profileUUIDs = new ArrayList<>();
+            for (int j = 0; j < SWITCHES_PER_ROUND; j++) {
+                profileUUIDs.add(UUID.randomUUID());
+            }
+            everyUUID.add(originalUUID);
+            everyUUID.addAll(profileUUIDs);
+
+            players.add(pool.submit(() -> {
+                start.await();
+                for (int round = 0; round < ROUNDS; round++) {
+                    PlayerSession session = new PlayerSession(originalUUID, identity(originalUUID));
+                    registry.register(originalUUID, session);
+                    assertSame(session, registry.findByCurrent(originalUUID));
+
+                    UUID currentUUID = originalUUID;
+                    for (UUID profileUUID : profileUUIDs) {
+                        assertSame(session, registry.setApplied(currentUUID, identity(profileUUID)));
+                        assertNull(registry.findByCurrent(currentUUID));
+                        currentUUID = profileUUID;
+                        assertSame(session, registry.findByCurrent(currentUUID));
+                        assertEquals(originalUUID, registry.findOriginalUUID(currentUUID));
+                    }
+
+                    // Quit by current UUID on even rounds and by original UUID on odd ones
+                    registry.unregister(round % 2 == 0 ? currentUUID : originalUUID);
+                    assertNull(registry.findByCurrent(currentUUID));
+                    assertNull(registry.findOriginalUUID(currentUUID));
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> player : players) {
+            player.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertTrue(registry.getSessions().isEmpty());
+        for (UUID uuid : everyUUID) {
+            assertNull(registry.findByCurrent(uuid));
+        }
+    }
+
+    @Test
+    void readersAlwaysFindASwitchingPlayer() throws Exception {
+        IdentityRegistry registry = new IdentityRegistry();
+        UUID originalUUID = UUID.randomUUID();
+        List<UUID> chain = new ArrayList<>();
+        chain.add(originalUUID);
+        for (int i = 0; i < 20_000; i++) {
+            chain.add(UUID.randomUUID());
+        }
+
+        PlayerSession session = new PlayerSession(originalUUID, identity(originalUUID));
+        registry.register(originalUUID, session);
+
+        // Index of the last UUID the switcher finished applying
+        AtomicInteger applied = new AtomicInteger();
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+
+        Future<?> switcher = pool.submit(() -> {
+            for (int i = 1; i < chain.size(); i++) {
+                assertNotNull(registry.setApplied(chain.get(i - 1), identity(chain.get(i))));
+                applied.set(i);
+            }
+            done.set(true);
+        });
+
+        List<Future<?>> readers = new ArrayList<>();
+        for (int r = 0; r < 3; r++) {
+            readers.add(pool.submit(() -> {
+                while (!done.get()) {
+                    // The new UUID is indexed before the old one is dropped, so walking forward from the last
+                    // published index must find the player before running past the end of the chain
+                    int i = applied.get();
+                    PlayerSession found = null;
+                    while (found == null && i < chain.size()) {
+                        found = registry.findByCurrent(chain.get(i));
+                        i++;
+                    }
+                    assertSame(session, found);
+                }
+            }));
+        }
+
+        switcher.get(60, TimeUnit.SECONDS);
+        for (Future<?> reader : readers) {
+            reader.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertSame(session, registry.findByCurrent(chain.get(chain.size() - 1)));
+        assertEquals(originalUUID, registry.findOriginalUUID(chain.get(chain.size() - 1)));
+    }
+
+    @Test
+    void switchRacingQuitLeavesNothingBehind() throws Exception {
+        IdentityRegistry registry = new IdentityRegistry();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+
+        for (int round = 0; round < 10_000; round++) {
+            UUID originalUUID = UUID.randomUUID();
+            UUID profileUUID = UUID.randomUUID();
+            registry.register(originalUUID, new PlayerSession(originalUUID, identity(originalUUID)));
+
+            // Both threads spin on the same flag, so they start as close together as possible
+            AtomicInteger ready = new AtomicInteger();
+            Future<?> switcher = pool.submit(() -> {
+                ready.incrementAndGet();
+                while (ready.get() < 2) {
+                    Thread.yield();
+                }
+                registry.setApplied(originalUUID, identity(profileUUID));
+            });
+            Future<?> quitter = pool.submit(() -> {
+                ready.incrementAndGet();
+                while (ready.get() < 2) {
+                    Thread.yield();
+                }
+                registry.unregister(originalUUID);
+            });
+            switcher.get(10, TimeUnit.SECONDS);
+            quitter.get(10, TimeUnit.SECONDS);
+
+            // The quit may run before or after the switch, but never leaves an index behind
+            assertNull(registry.findByCurrent(originalUUID));
+            assertNull(registry.findByCurrent(profileUUID));
+        }
+        pool.shutdown();
+
+        assertTrue(registry.getSessions().isEmpty());
+    }
+
+    private static IdentityData identity(UUID uuid) {
+        return new IdentityData(uuid, "player", IdentityData.SkinData.EMPTY);
+    }
+}
@@ -7,6 +7,8 @@ include("api")
 include("plugin")
 include("nms")
 
+include("nms:common")
+
 include("nms:v1_20_R1")
 include("nms:v1_20_R2")
 include("nms:v1_20_R3")